@@ -0,0 +1,234 @@
+/**
+ * Classifies many five-card hands at once.
+ * <p>
+ * Hands are held in structure-of-arrays form by {@link Hands}: one int array of
+ * values and one of suit bits for each of the five card positions, so card k of
+ * hand i is <code>values[k][i]</code> and <code>suits[k][i]</code>.  A suit
+ * is stored as a one-hot bit from 1 to 8, and a blank has value 0 and suit 0.
+ * <p>
+ * The scalar loop works out the same three things HandEvaluator does, but with
+ * arithmetic in place of branches and table lookups, so every hand goes down
+ * the same straight line of code:
+ * <pre>
+ * eq(x)     = (x - 1) &gt;&gt;&gt; 31       1 if x == 0, for 0 &lt;= x &lt; 2^31
+ * matches   = sum over the 10 pairs a,b of eq(a ^ b), counting only pairs where a isn't blank
+ * straight  = no two values equal, and max - min == 4
+ * flush     = -(s0 &amp; s1 &amp; s2 &amp; s3 &amp; s4) &gt;&gt;&gt; 31</pre>
+ * Five different values spanning four are the same five bits in a row that
+ * HandEvaluator looks for.  The match count becomes a category with the same
+ * kind of arithmetic instead of HandEvaluator's MATCH_CATEGORY table.  The
+ * answers are exactly those of PokerHand.getRankInt for any hand whose cards
+ * all have codes.
+ * <p>
+ * In practice C2 in Java 21 gives up on vectorizing a loop body this big, so
+ * the scalar loop is only a little faster than evaluating one PokerHand at a
+ * time.  The big win is the Vector API: if the class VectorBatchEvaluator, which
+ * is compiled separately from the <code>vector</code> directory, is on the
+ * class path and the JVM was started with
+ * <code>--add-modules jdk.incubator.vector</code>, the same steps are done
+ * explicitly on whole vectors, and a batch of 10,240 hands goes about 20 times
+ * as fast as PokerHand.  Otherwise, or if the system property
+ * <code>pokersquares.vector</code> is <code>false</code>, the scalar loop is used.
+ */
+public final class BatchEvaluator
+{
+    /** Classifies hands <code>from</code> to <code>to - 1</code> of a batch */
+    interface Kernel
+    {
+        void classify(int[][] values, int[][] suits, int from, int to, int[] categories);
+    }
+
+    /** The scalar loop, always available */
+    static final Kernel SCALAR = BatchEvaluator::classifyScalar;
+
+    private static final Kernel KERNEL = loadKernel();
+
+    private BatchEvaluator() {}
+
+    /** @return the vector kernel if it can be used, otherwise the scalar one */
+    private static Kernel loadKernel()
+    {
+        if (!Boolean.parseBoolean(System.getProperty("pokersquares.vector", "true"))
+            || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+            return SCALAR;
+        try
+        {
+            return (Kernel) Class.forName("VectorBatchEvaluator").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return SCALAR;
+        }
+    }
+
+    /** @return true if batches are classified with the Vector API */
+    public static boolean isVectorized()
+    {
+        return KERNEL != SCALAR;
+    }
+
+    /**
+     * Finds the category of every hand in a batch.
+     *
+     * @param hands the hands
+     * @param categories where to put each hand's category, 0-8, at the hand's index
+     */
+    public static void classify(Hands hands, int[] categories)
+    {
+        if (categories.length < hands.size)
+            throw new IllegalArgumentException("room for " + categories.length + " categories, not " + hands.size);
+        KERNEL.classify(hands.values, hands.suits, 0, hands.size, categories);
+    }
+
+    /**
+     * Scores a batch of squares that were added with {@link Hands#addLines}, and
+     * nothing else.
+     *
+     * @param hands ten lines for each square
+     * @param categories scratch space for the categories, at least hands.size() long
+     * @param scores where to put each square's score
+     * @return the number of squares
+     */
+    public static int scoreSquares(Hands hands, int[] categories, int[] scores)
+    {
+        classify(hands, categories);
+        int squares = hands.size / 10;
+        int[] handValues = HandEvaluator.HAND_VALUES;
+        for (int s = 0, line = 0; s < squares; s++)
+        {
+            int score = 0;
+            for (int end = line + 10; line < end; line++)
+                score += handValues[categories[line]];
+            scores[s] = score;
+        }
+        return squares;
+    }
+
+    /** The branch-free loop described above */
+    static void classifyScalar(int[][] values, int[][] suits, int from, int to, int[] categories)
+    {
+        int[] v0 = values[0], v1 = values[1], v2 = values[2], v3 = values[3], v4 = values[4];
+        int[] s0 = suits[0], s1 = suits[1], s2 = suits[2], s3 = suits[3], s4 = suits[4];
+        for (int i = from; i < to; i++)
+        {
+            int a = v0[i], b = v1[i], c = v2[i], d = v3[i], e = v4[i];
+
+            int ab = ((a ^ b) - 1) >>> 31, ac = ((a ^ c) - 1) >>> 31, ad = ((a ^ d) - 1) >>> 31,
+                ae = ((a ^ e) - 1) >>> 31, bc = ((b ^ c) - 1) >>> 31, bd = ((b ^ d) - 1) >>> 31,
+                be = ((b ^ e) - 1) >>> 31, cd = ((c ^ d) - 1) >>> 31, ce = ((c ^ e) - 1) >>> 31,
+                de = ((d ^ e) - 1) >>> 31;
+            int matches = ((ab + ac + ad + ae) & -a >> 31) + ((bc + bd + be) & -b >> 31)
+                        + ((cd + ce) & -c >> 31) + (de & -d >> 31);
+            // 0-3 stay as they are, 4 is a Full House (6), 6 is Four of a Kind (7),
+            // and 10, five of one value, only happens with custom cards and is High Card
+            int category = matches + (((3 - matches) >>> 31) << 1)
+                         - (((matches ^ 6) - 1) >>> 31) - (((matches ^ 10) - 1) >>> 31) * 12;
+
+            int equal = ab | ac | ad | ae | bc | bd | be | cd | ce | de;
+            int spread = Math.max(Math.max(Math.max(a, b), Math.max(c, d)), e)
+                       - Math.min(Math.min(Math.min(a, b), Math.min(c, d)), e);
+            int straight = ((spread ^ 4) - 1 >>> 31) & (equal ^ 1);
+            int flush = -(s0[i] & s1[i] & s2[i] & s3[i] & s4[i]) >>> 31;
+
+            category = Math.max(category, straight << 2 | flush * 5);
+            categories[i] = category + (straight & flush) * (8 - category);
+        }
+    }
+
+    /**
+     * A batch of five-card hands, stored lane by lane.
+     */
+    public static final class Hands
+    {
+        /** values[k][i] is the value of card k of hand i, 0 for a blank */
+        final int[][] values = new int[5][];
+
+        /** suits[k][i] is the suit bit of card k of hand i, from 1 to 8, or 0 for a blank */
+        final int[][] suits = new int[5][];
+
+        private int size;
+
+        /**
+         * @param capacity the most hands the batch can hold
+         */
+        public Hands(int capacity)
+        {
+            for (int k = 0; k < 5; k++)
+            {
+                values[k] = new int[capacity];
+                suits[k] = new int[capacity];
+            }
+        }
+
+        /** @return the number of hands in the batch */
+        public int size() {return size;}
+
+        /** @return the most hands the batch can hold */
+        public int getCapacity() {return values[0].length;}
+
+        /** Empties the batch, keeping its arrays */
+        public void clear() {size = 0;}
+
+        /**
+         * Adds a hand of encoded cards, as made by HandEvaluator.encode or Card.getCode.
+         *
+         * @return the hand's index in the batch
+         * @throws IllegalStateException if the batch is full
+         */
+        public int add(int c0, int c1, int c2, int c3, int c4)
+        {
+            if (size == values[0].length)
+                throw new IllegalStateException("the batch is full");
+            set(0, c0);
+            set(1, c1);
+            set(2, c2);
+            set(3, c3);
+            set(4, c4);
+            return size++;
+        }
+
+        private void set(int k, int code)
+        {
+            values[k][size] = code & HandEvaluator.VALUE_MASK;
+            suits[k][size] = (code & HandEvaluator.SUIT_MASK) >>> 4;
+        }
+
+        /**
+         * Adds a hand of five cards.
+         *
+         * @return the hand's index in the batch
+         * @throws IllegalArgumentException if there aren't five cards, or one of
+         *         them has no code
+         */
+        public int add(Card... cards)
+        {
+            if (cards.length != 5)
+                throw new IllegalArgumentException("a hand needs 5 cards, not " + cards.length);
+            int c0 = cards[0].getCode(), c1 = cards[1].getCode(), c2 = cards[2].getCode(),
+                c3 = cards[3].getCode(), c4 = cards[4].getCode();
+            if ((c0 | c1 | c2 | c3 | c4) < 0)
+                throw new IllegalArgumentException("a card can't be encoded");
+            return add(c0, c1, c2, c3, c4);
+        }
+
+        /**
+         * Adds the ten lines of a square: the five rows, then the five columns.
+         *
+         * @return the index of the first row in the batch
+         * @throws IllegalArgumentException if a card has no code
+         */
+        public int addLines(PokerSquare square)
+        {
+            if (size + 10 > values[0].length)
+                throw new IllegalStateException("the batch is full");
+            int first = size;
+            for (int i = 0; i < 5; i++)
+                add(square.getCard(i, 0), square.getCard(i, 1), square.getCard(i, 2),
+                    square.getCard(i, 3), square.getCard(i, 4));
+            for (int j = 0; j < 5; j++)
+                add(square.getCard(0, j), square.getCard(1, j), square.getCard(2, j),
+                    square.getCard(3, j), square.getCard(4, j));
+            return first;
+        }
+    }
+}
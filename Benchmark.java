@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * A small benchmark harness for the hot paths of the game.
+ * <p>
+ * Each benchmark is run for a warm-up period so the JIT settles, then measured
+ * over several timed iterations.  For each one the harness reports throughput in
+ * operations per second and the bytes allocated per operation, taken from the
+ * thread allocation counter.  Every benchmark returns an int that is summed into
+ * a sink, so the JIT can't throw the work away.
+ * <p>
+ * All boards and hands are built from fixed seeds, so runs are comparable.
+ * Passing a baseline file prints each result's change against it:
+ * <pre>
+ * java Benchmark                                  run everything
+ * java Benchmark evaluate                         run benchmarks whose names start with "evaluate"
+ * java Benchmark --baseline benchmark-baseline.txt
+ * java --add-modules jdk.incubator.vector Benchmark batch    the batch evaluator with the Vector API
+ * </pre>
+ * The last needs the kernel in the vector directory compiled too; see VectorBatchEvaluator.
+ * The output of a run can be saved and used as the next run's baseline.
+ * The same benchmarks can be run under JMH, which forks and checks its own
+ * measurements, from the jar built by <code>mvn -P jmh package</code>; see
+ * pom.xml.  jmh-baseline.json is such a run of the code as it is now, with the
+ * gc profiler, and jmh-baseline.txt has its numbers and what it ran on.
+ * benchmark-baseline.txt is the original code, before any of the changes it is
+ * used to measure, so it only has the benchmarks that code could run.  This
+ * class can't compile against that code, so the file is made with
+ * baseline/BaselineBenchmark.java, which says how.
+ */
+public class Benchmark
+{
+    /** One operation of a benchmark */
+    private interface Op extends IntSupplier
+    {
+        int run();
+
+        default int getAsInt() {return run();}
+    }
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long ITERATION_NANOS = 500000000L;
+    private static final int ITERATIONS = 5;
+
+    /** Collects every result so the work can't be optimized away */
+    private static int sink;
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<Op> ops = new ArrayList<Op>();
+
+    private void add(String name, Op op)
+    {
+        names.add(name);
+        ops.add(op);
+    }
+
+    /** Sets up every benchmark */
+    private Benchmark()
+    {
+        // one hand of each category, by card id (value - 2) * 4 + suit
+        int[][] hands = {
+            {48, 41, 30, 13, 6},     // High Card:       AH QD 9S 5D 3S
+            {48, 49, 30, 13, 6},     // One Pair:        AH AD 9S 5D 3S
+            {48, 49, 30, 31, 6},     // Two Pair:        AH AD 9S 9C 3S
+            {48, 49, 50, 31, 6},     // Three of a Kind: AH AD AS 9C 3S
+            {20, 25, 30, 35, 36},    // Straight:        7H 8D 9S TC JH
+            {48, 40, 28, 12, 4},     // Flush:           AH QH 9H 5H 3H
+            {48, 49, 50, 31, 30},    // Full House:      AH AD AS 9C 9S
+            {48, 49, 50, 51, 6},     // Four of a Kind:  AH AD AS AC 3S
+            {20, 24, 28, 32, 36}};   // Straight Flush:  7H 8H 9H TH JH
+        String[] names = {"highCard", "onePair", "twoPair", "threeOfAKind", "straight",
+            "flush", "fullHouse", "fourOfAKind", "straightFlush"};
+        for (int h = 0; h < hands.length; h++)
+        {
+            // four copies of the hand with the suits rotated, taken in turn so the
+            // JIT can't hoist a single constant hand out of the loop
+            PokerHand[] rotated = new PokerHand[4];
+            for (int r = 0; r < 4; r++)
+            {
+                rotated[r] = new PokerHand();
+                for (int id : hands[h])
+                    rotated[r].addCard(Card.fromId(id / 4 * 4 + (id + r) % 4));
+            }
+            add("evaluate." + names[h], new Op() {
+                private int next;
+                public int run()
+                {
+                    return rotated[next++ & 3].getRankInt();
+                }
+            });
+        }
+
+        add("deck.construct", () -> new Deck().getSize());
+
+        Deck shuffled = new Deck();
+        add("deck.shuffle", () -> {
+            shuffled.shuffle();
+            return shuffled.getCard(0).getId();
+        });
+
+        add("deck.deal52", () -> {
+            Deck deck = new Deck();
+            int sum = 0;
+            for (int i = 0; i < 52; i++)
+                sum += deck.removeCard(0).getId();
+            return sum;
+        });
+
+        Deck reused = new Deck();
+        add("deck.resetDeal52", () -> {
+            reused.reset();
+            int sum = 0;
+            for (int i = 0; i < 52; i++)
+                sum += reused.dealCard().getId();
+            return sum;
+        });
+
+        // filling and scoring a square, which the baseline did by building the ten hands at the end
+        PokerSquare full = fixedSquare(42);
+        Card[] fullCards = new Card[25];
+        for (int cell = 0; cell < 25; cell++)
+            fullCards[cell] = full.getCard(cell / 5, cell % 5);
+        add("square.fillScore", () -> {
+            PokerSquare square = new PokerSquare();
+            for (int cell = 0; cell < 25; cell++)
+                square.setCard(cell / 5, cell % 5, fullCards[cell]);
+            return square.getScore();
+        });
+        add("square.summary", () -> full.getSummary().length());
+
+        PlacementPolicy random = new RandomPolicy();
+        PokerSquare board = new PokerSquare();
+        add("game.random", () -> {
+            Deck deck = new Deck();
+            deck.shuffle();
+            board.clear();
+            return Simulator.playGame(random, board, deck);
+        });
+        Deck gameDeck = new Deck();
+        add("game.randomReusedDeck", () -> {
+            gameDeck.reset();
+            gameDeck.shuffle();
+            board.clear();
+            return Simulator.playGame(random, board, gameDeck);
+        });
+
+        // the lines of 1024 finished squares, scored one PokerHand at a time and as a batch
+        PokerSquare[] squares = new PokerSquare[1024];
+        PokerHand[] lineHands = new PokerHand[squares.length * 10];
+        for (int s = 0; s < squares.length; s++)
+        {
+            squares[s] = fixedSquare(s);
+            for (int i = 0; i < 5; i++)
+            {
+                lineHands[s * 10 + i] = new PokerHand();
+                lineHands[s * 10 + i + 5] = new PokerHand();
+                for (int j = 0; j < 5; j++)
+                {
+                    lineHands[s * 10 + i].addCard(squares[s].getCard(i, j));
+                    lineHands[s * 10 + i + 5].addCard(squares[s].getCard(j, i));
+                }
+            }
+        }
+        add("batch.pokerHand10240", () -> {
+            int sum = 0;
+            for (PokerHand h : lineHands)
+                sum += h.getRankInt();
+            return sum;
+        });
+        BatchEvaluator.Hands lines = new BatchEvaluator.Hands(squares.length * 10);
+        for (PokerSquare s : squares)
+            lines.addLines(s);
+        int[] categories = new int[lines.size()];
+        add("batch.evaluate10240", () -> {
+            BatchEvaluator.classify(lines, categories);
+            return categories[sink & 1023];
+        });
+        int[] scores = new int[squares.length];
+        add("batch.scoreSquares1024", () -> {
+            BatchEvaluator.scoreSquares(lines, categories, scores);
+            return scores[sink & 1023];
+        });
+    }
+
+    /**
+     * Provides one benchmark's operation, set up as a run of this harness
+     * sets it up.  The JMH benchmarks in the jmh directory have to be in a
+     * package, so they can't name this class, and look this up by reflection.
+     *
+     * @param name the benchmark's name, as this harness prints it
+     * @return its operation
+     * @throws IllegalArgumentException if there is no such benchmark
+     */
+    public static IntSupplier getOp(String name)
+    {
+        Benchmark benchmark = new Benchmark();
+        int b = benchmark.names.indexOf(name);
+        if (b < 0)
+            throw new IllegalArgumentException("unknown benchmark: " + name);
+        return benchmark.ops.get(b);
+    }
+
+    /**
+     * Builds a full square from a fixed seed, so every run measures the same board.
+     */
+    private static PokerSquare fixedSquare(long seed)
+    {
+        List<Card> cards = new ArrayList<Card>();
+        for (int id = 0; id < 52; id++)
+            cards.add(Card.fromId(id));
+        Collections.shuffle(cards, new Random(seed));
+        PokerSquare square = new PokerSquare();
+        for (int cell = 0; cell < 25; cell++)
+            square.setCard(cell / 5, cell % 5, cards.get(cell));
+        return square;
+    }
+
+    /**
+     * Runs one benchmark.
+     *
+     * @return the operations per second and the bytes allocated per operation
+     */
+    private static double[] measure(Op op)
+    {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().threadId();
+
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end)
+            for (int i = 0; i < 1000; i++)
+                sink += op.run();
+
+        long ops = 0, nanos = 0, bytes = 0;
+        for (int it = 0; it < ITERATIONS; it++)
+        {
+            long allocated = threads.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            end = start + ITERATION_NANOS;
+            long now;
+            do
+            {
+                for (int i = 0; i < 1000; i++)
+                    sink += op.run();
+                ops += 1000;
+                now = System.nanoTime();
+            }
+            while (now < end);
+            nanos += now - start;
+            bytes += threads.getThreadAllocatedBytes(id) - allocated;
+        }
+        return new double[] {ops * 1e9 / nanos, (double) bytes / ops};
+    }
+
+    /**
+     * Reads a saved run.
+     *
+     * @return ops/s by benchmark name
+     */
+    private static Map<String, Double> readBaseline(String file) throws IOException
+    {
+        Map<String, Double> baseline = new HashMap<String, Double>();
+        for (String line : Files.readAllLines(Paths.get(file)))
+        {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length >= 3 && !line.startsWith("#"))
+            {
+                try
+                {
+                    baseline.put(parts[0], Double.parseDouble(parts[1]));
+                }
+                catch (NumberFormatException e)
+                {
+                    // a header line
+                }
+            }
+        }
+        return baseline;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String prefix = "";
+        Map<String, Double> baseline = null;
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--baseline"))
+                baseline = readBaseline(args[++i]);
+            else
+                prefix = args[i];
+        }
+
+        Benchmark benchmark = new Benchmark();
+        System.out.printf("# java %s, %d cpus%n", System.getProperty("java.version"),
+                          Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-28s %16s %12s%s%n", "benchmark", "ops/s", "bytes/op",
+                          baseline == null ? "" : "      change");
+        for (int b = 0; b < benchmark.ops.size(); b++)
+        {
+            String name = benchmark.names.get(b);
+            if (!name.startsWith(prefix))
+                continue;
+            double[] r = measure(benchmark.ops.get(b));
+            String change = "";
+            if (baseline != null && baseline.containsKey(name))
+                change = String.format("  %+9.1f%%", 100 * (r[0] / baseline.get(name) - 1));
+            System.out.printf("%-28s %16.0f %12.1f%s%n", name, r[0], r[1], change);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+}
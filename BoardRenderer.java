@@ -0,0 +1,433 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a PokerSquare's board and summary into an Appendable, such as a
+ * StringBuilder, a Writer or System.out.  Into a StringBuilder, no Strings are
+ * built along the way.
+ * <p>
+ * The static methods write the same text as PokerSquare.toString, getSummary
+ * and getHandNames.  A renderer object draws frames for a game in progress.
+ * Each frame is built in a StringBuilder and handed to the Appendable in one
+ * piece, then flushed if it can be, so System.out gets one write per frame
+ * rather than one per character.  In plain mode each frame is the whole board
+ * and summary.  In terminal mode the first frame clears the screen, and each
+ * later frame uses ANSI cursor moves to rewrite only the cards, summary lines
+ * and score that changed since the last frame.  A move only changes one card,
+ * one row line and one column line, so a terminal frame is a few dozen bytes
+ * instead of over a kilobyte.
+ * <p>
+ * A renderer keeps its own picture of the board, which it can take from a
+ * square or build up from the square's {@link SquareEvent}s.  Drawn from
+ * events, it never looks at the square, so it can follow a game from the
+ * thread the events are delivered on while the game goes on, and nothing is
+ * scored twice: the cards come from CardPlaced, the summary lines from
+ * LineChanged and the score from ScoreChanged.  A terminal frame drawn from
+ * events puts the cursor back where it found it, so it doesn't disturb
+ * whatever is being typed at the prompt.  The renderer is synchronized, so
+ * the game's thread and the delivering thread can share it.
+ * <p>
+ * Terminal layout, by screen row:
+ * <pre>
+ *  1      1    2    3    4    5
+ *  2-6  A [AC] [4H] [JC] [4S] [AH]
+ *  8-9  ROWS / COLUMNS headings
+ * 10-14 the row and column summaries
+ * 16    Score
+ * 18    where the cursor is left for prompts</pre>
+ */
+public class BoardRenderer
+{
+    /** The width of the left column of the summary */
+    private static final int COLUMN_WIDTH = 38;
+
+    /** The screen row of the first board row */
+    private static final int BOARD_ROW = 2;
+
+    /** The screen row of the first summary line */
+    private static final int SUMMARY_ROW = 10;
+
+    /** The screen row of the score */
+    private static final int SCORE_ROW = 16;
+
+    /** The screen row the cursor is left on after a frame */
+    private static final int PROMPT_ROW = 18;
+
+    private static final String ESC = "\u001B[";
+
+    /** Saves and restores the cursor position, as DEC terminals do */
+    private static final String SAVE_CURSOR = "\u001B7", RESTORE_CURSOR = "\u001B8";
+
+    /** Where frames are written */
+    private final Appendable out;
+
+    /** The frame being drawn, reused from one frame to the next */
+    private final StringBuilder frame = new StringBuilder(2048);
+
+    /** True to draw with ANSI cursor moves, false for whole frames */
+    private final boolean terminal;
+
+    /** The board as it is now, as far as the renderer has been told */
+    private final Picture picture = new Picture();
+
+    /** The board on screen after the last frame, or null before the first frame */
+    private Picture shown;
+
+    /**
+     * Creates a renderer for a game in progress.
+     *
+     * @param out where the frames go
+     * @param terminal true to update an ANSI terminal in place, false to write whole frames
+     */
+    public BoardRenderer(Appendable out, boolean terminal)
+    {
+        this.out = out;
+        this.terminal = terminal;
+    }
+
+    /**
+     * Draws the current state of a square.  In terminal mode the cursor is
+     * left at the start of the prompt area, which is cleared.
+     *
+     * @param square the square to draw
+     * @throws IOException if the output can't be written
+     */
+    public synchronized void render(PokerSquare square) throws IOException
+    {
+        picture.copy(square);
+        frame.setLength(0);
+        draw(frame);
+        if (terminal)
+        {
+            moveTo(PROMPT_ROW, 1, frame);
+            frame.append(ESC).append('J');
+        }
+        write();
+    }
+
+    /**
+     * Applies one published move to the renderer's picture and draws it.  In
+     * terminal mode the cursor is put back where it was.
+     *
+     * @param move the events of one move, as published by PokerSquare
+     * @throws IOException if the output can't be written
+     */
+    public synchronized void render(List<SquareEvent> move) throws IOException
+    {
+        for (SquareEvent event : move)
+            picture.apply(event);
+        frame.setLength(0);
+        if (terminal)
+            frame.append(SAVE_CURSOR);
+        draw(frame);
+        if (terminal)
+            frame.append(RESTORE_CURSOR);
+        write();
+    }
+
+    /**
+     * Moves the cursor to the prompt area and clears it, ready for the next
+     * round of prompts.  In plain mode this does nothing.
+     *
+     * @throws IOException if the output can't be written
+     */
+    public synchronized void clearPrompt() throws IOException
+    {
+        if (!terminal)
+            return;
+        frame.setLength(0);
+        moveTo(PROMPT_ROW, 1, frame);
+        frame.append(ESC).append('J');
+        write();
+    }
+
+    /** Hands the frame to the output in one piece */
+    private void write() throws IOException
+    {
+        out.append(frame);
+        if (out instanceof Flushable flushable)
+            flushable.flush();
+    }
+
+    /** Draws the picture into a StringBuilder */
+    private void draw(StringBuilder out) throws IOException
+    {
+        if (!terminal)
+        {
+            writeBoard(picture, out);
+            out.append('\n');
+            writeSummary(picture, out);
+            out.append('\n');
+            return;
+        }
+
+        if (shown == null)
+        {
+            shown = new Picture();
+            out.append(ESC).append("2J").append(ESC).append("H");
+            writeBoard(picture, out);
+            out.append('\n');
+            writeSummary(picture, out);
+        }
+        else
+        {
+            int changedLines = 0;
+            for (int cell = 0; cell < 25; cell++)
+            {
+                Card card = picture.getCard(cell);
+                if (card == shown.getCard(cell))
+                    continue;
+                moveTo(BOARD_ROW + cell / 5, 4 + cell % 5 * 5, out);
+                out.append(card.getShortString());
+                changedLines |= 1 << cell / 5 | 1 << (cell % 5 + 5);
+            }
+            for (int line = 0; line < 10; line++)
+                if (picture.getCategory(line) != shown.getCategory(line)
+                    || picture.getValue(line) != shown.getValue(line))
+                    changedLines |= 1 << line;
+            for (int line = 0; line < 10; line++)
+                if ((changedLines & 1 << line) != 0)
+                {
+                    moveTo(SUMMARY_ROW + line % 5, line < 5 ? 1 : COLUMN_WIDTH + 1, out);
+                    pad(writeLine(picture, line, out), out);
+                }
+            if (picture.getScore() != shown.getScore())
+            {
+                moveTo(SCORE_ROW, 1, out);
+                out.append("Score: ");
+                appendInt(picture.getScore(), out);
+                out.append(ESC).append('K');
+            }
+        }
+        shown.copy(picture);
+    }
+
+    /** Moves the terminal cursor to a 1-based row and column */
+    private static void moveTo(int row, int column, StringBuilder out)
+    {
+        out.append(ESC).append(row).append(';').append(column).append('H');
+    }
+
+    /**
+     * Writes the square as a grid, as shown in PokerSquare.toString.
+     *
+     * @param square the square to write
+     * @param out where to write it
+     * @throws IOException if the output can't be written
+     */
+    public static void writeBoard(PokerSquare square, Appendable out) throws IOException
+    {
+        writeBoard(board(square), out);
+    }
+
+    private static void writeBoard(Board board, Appendable out) throws IOException
+    {
+        out.append("    1    2    3    4    5\n");
+        for (int i = 0; i < 5; i++)
+        {
+            out.append((char) (i + 65)).append(' ');
+            for (int j = 0; j < 5; j++)
+                out.append('[').append(board.getCard(i * 5 + j).getShortString()).append("] ");
+            out.append('\n');
+        }
+    }
+
+    /**
+     * Writes the summary of the square, as shown in PokerSquare.getSummary.
+     *
+     * @param square the square to summarize
+     * @param out where to write it
+     * @throws IOException if the output can't be written
+     */
+    public static void writeSummary(PokerSquare square, Appendable out) throws IOException
+    {
+        writeSummary(board(square), out);
+    }
+
+    private static void writeSummary(Board board, Appendable out) throws IOException
+    {
+        out.append("ROWS                                  COLUMNS\n");
+        out.append("--------------                        --------------\n");
+        for (int i = 0; i < 5; i++)
+        {
+            pad(writeLine(board, i, out), out);
+            pad(writeLine(board, i + 5, out), out);
+            out.append('\n');
+        }
+        out.append("\nScore: ");
+        appendInt(board.getScore(), out);
+    }
+
+    /**
+     * Writes the names of the ten hands, one per line, rows first.
+     *
+     * @param square the square to write
+     * @param out where to write it
+     * @throws IOException if the output can't be written
+     */
+    public static void writeHandNames(PokerSquare square, Appendable out) throws IOException
+    {
+        for (int line = 0; line < 10; line++)
+            out.append(HandEvaluator.HAND_RANKS[square.getLineCategory(line)]).append('\n');
+    }
+
+    /**
+     * Writes one line's summary, in the same form as PokerHand.getShortOutput.
+     *
+     * @return the number of characters written
+     */
+    private static int writeLine(Board board, int line, Appendable out) throws IOException
+    {
+        int written = 0;
+        for (int k = 0; k < 5; k++)
+        {
+            String card = board.getCard(line < 5 ? line * 5 + k : k * 5 + line - 5).getShortString();
+            out.append(card).append(' ');
+            written += card.length() + 1;
+        }
+        String name = HandEvaluator.HAND_RANKS[board.getCategory(line)];
+        out.append("- ").append(name).append(" (");
+        written += 2 + name.length() + 2 + appendInt(board.getValue(line), out);
+        out.append(')');
+        return written + 1;
+    }
+
+    /** Pads a summary line out to the width of the left column */
+    private static void pad(int written, Appendable out) throws IOException
+    {
+        for (int i = written; i < COLUMN_WIDTH; i++)
+            out.append(' ');
+    }
+
+    /**
+     * Writes a non-negative int, straight into a StringBuilder, or as a String
+     * to anything else.
+     *
+     * @return the number of digits written
+     */
+    private static int appendInt(int n, Appendable out) throws IOException
+    {
+        if (out instanceof StringBuilder sb)
+        {
+            int start = sb.length();
+            sb.append(n);
+            return sb.length() - start;
+        }
+        String digits = Integer.toString(n);
+        out.append(digits);
+        return digits.length();
+    }
+
+    /** What the writers need to know about a board, cells in row-major order */
+    private interface Board
+    {
+        Card getCard(int cell);
+        int getCategory(int line);
+        int getValue(int line);
+        int getScore();
+    }
+
+    /** @return a view of a square for the writers */
+    private static Board board(PokerSquare square)
+    {
+        return new Board() {
+            public Card getCard(int cell) {return square.getCard(cell / 5, cell % 5);}
+            public int getCategory(int line) {return square.getLineCategory(line);}
+            public int getValue(int line) {return square.getLineValue(line);}
+            public int getScore() {return square.getScore();}
+        };
+    }
+
+    /** A board kept by the renderer, copied from a square or built up from events */
+    private static final class Picture implements Board
+    {
+        private final Card[] cards = new Card[25];
+        private final int[] categories = new int[10], values = new int[10];
+        private int score;
+
+        Picture()
+        {
+            clear();
+        }
+
+        /** Empties the board, as PokerSquare.clear does */
+        void clear()
+        {
+            Arrays.fill(cards, Card.BLANK);
+            Arrays.fill(categories, 0);
+            Arrays.fill(values, 0);
+            score = 0;
+        }
+
+        void copy(PokerSquare square)
+        {
+            for (int cell = 0; cell < 25; cell++)
+                cards[cell] = square.getCard(cell / 5, cell % 5);
+            for (int line = 0; line < 10; line++)
+            {
+                categories[line] = square.getLineCategory(line);
+                values[line] = square.getLineValue(line);
+            }
+            score = square.getScore();
+        }
+
+        void copy(Picture other)
+        {
+            System.arraycopy(other.cards, 0, cards, 0, 25);
+            System.arraycopy(other.categories, 0, categories, 0, 10);
+            System.arraycopy(other.values, 0, values, 0, 10);
+            score = other.score;
+        }
+
+        void apply(SquareEvent event)
+        {
+            if (event instanceof SquareEvent.CardPlaced placed)
+                cards[placed.getRow() * 5 + placed.getColumn()] = placed.getCard();
+            else if (event instanceof SquareEvent.LineChanged changed)
+            {
+                categories[changed.getLine()] = changed.getAfter();
+                values[changed.getLine()] = changed.getValue();
+            }
+            else if (event instanceof SquareEvent.ScoreChanged scored)
+                score = scored.getScore();
+            else if (event instanceof SquareEvent.Cleared)
+                clear();
+        }
+
+        public Card getCard(int cell) {return cards[cell];}
+        public int getCategory(int line) {return categories[line];}
+        public int getValue(int line) {return values[line];}
+        public int getScore() {return score;}
+    }
+
+    /** Something written into an Appendable */
+    interface Part
+    {
+        void write(PokerSquare square, Appendable out) throws IOException;
+    }
+
+    /**
+     * Writes part of a square into a new String, for the toString-style methods.
+     *
+     * @param square the square to write
+     * @param part which part to write, such as BoardRenderer::writeBoard
+     * @return what was written
+     */
+    static String toString(PokerSquare square, Part part)
+    {
+        StringBuilder sb = new StringBuilder(1024);
+        try
+        {
+            part.write(square, sb);
+        }
+        catch (IOException e)
+        {
+            // a StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * The cards on a PokerSquare, packed into three longs.
+ * <p>
+ * Each space takes 6 bits: 0 for a blank, or the card's id plus 1.  Spaces
+ * 0-9 are in the first long, 10-19 in the second and 20-24 in the third, so
+ * an empty square is all zeros.  A snapshot never changes once it is made, so
+ * one can be shared by any number of threads, kept as a key, or compared with
+ * equals.  {@link PokerSquare#restore} puts a square back to a snapshot, and
+ * {@link #toSquare} builds a new square from one, on whatever thread needs it.
+ * <p>
+ * Only cards with ids can be packed: those of the default deck, and the blank.
+ */
+public final class BoardSnapshot
+{
+    private static final int BITS = 6, MASK = (1 << BITS) - 1;
+
+    private final long low, middle, high;
+
+    /**
+     * @param square the cards, by row and then column
+     * @throws IllegalArgumentException if a card has no id
+     */
+    BoardSnapshot(Card[][] square)
+    {
+        long[] packed = new long[3];
+        for (int cell = 0; cell < 25; cell++)
+        {
+            Card card = square[cell / 5][cell % 5];
+            int id = card.getId();
+            if (id < 0)
+                throw new IllegalArgumentException(card + " has no id and can't be in a snapshot");
+            long code = id == Card.BLANK_ID ? 0 : id + 1;
+            packed[cell / 10] |= code << BITS * (cell % 10);
+        }
+        low = packed[0];
+        middle = packed[1];
+        high = packed[2];
+    }
+
+    /**
+     * @param cell the space, 0-24 in row-major order
+     * @return the card in the space, or the blank card
+     */
+    public Card getCard(int cell)
+    {
+        long word = cell < 10 ? low : cell < 20 ? middle : high;
+        int code = (int) (word >>> BITS * (cell % 10)) & MASK;
+        return code == 0 ? Card.BLANK : Card.fromId(code - 1);
+    }
+
+    /** @return true if the space holds the blank card */
+    public boolean isEmpty(int cell)
+    {
+        long word = cell < 10 ? low : cell < 20 ? middle : high;
+        return (word >>> BITS * (cell % 10) & MASK) == 0;
+    }
+
+    /** @return a new square holding the snapshot's cards */
+    public PokerSquare toSquare()
+    {
+        PokerSquare square = new PokerSquare();
+        square.restore(this);
+        return square;
+    }
+
+    public boolean equals(Object o)
+    {
+        return o instanceof BoardSnapshot other
+               && low == other.low && middle == other.middle && high == other.high;
+    }
+
+    public int hashCode()
+    {
+        return Long.hashCode(low * 31 * 31 + middle * 31 + high);
+    }
+
+    /** @return two characters per space in row-major order, as GameServer sends the board */
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        for (int cell = 0; cell < 25; cell++)
+            s.append(isEmpty(cell) ? ".." : getCard(cell).getShortString());
+        return s.toString();
+    }
+}
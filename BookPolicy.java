@@ -0,0 +1,30 @@
+/**
+ * A placement policy that plays from an OpeningBook while the game is still in
+ * it, and hands every other decision to another policy.
+ */
+public class BookPolicy implements PlacementPolicy
+{
+    private final OpeningBook book;
+    private final PlacementPolicy fallback;
+
+    /**
+     * @param book the opening book, which can be shared between threads
+     * @param fallback the policy for positions the book doesn't have
+     */
+    public BookPolicy(OpeningBook book, PlacementPolicy fallback)
+    {
+        this.book = book;
+        this.fallback = fallback;
+    }
+
+    public int chooseCell(PokerSquare square, Card next, Deck remaining)
+    {
+        int cell = book.getBestCell(square, next, remaining);
+        return cell >= 0 ? cell : fallback.chooseCell(square, next, remaining);
+    }
+
+    public void startGame(long seed)
+    {
+        fallback.startGame(seed);
+    }
+}
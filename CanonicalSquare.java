@@ -0,0 +1,297 @@
+import java.util.Arrays;
+
+/**
+ * One representative for all the positions that are the same game in disguise.
+ * <p>
+ * Shuffling the rows of a square doesn't change its score: the row hands just
+ * trade places, and each column hand gets the same cards in a different order.
+ * The same goes for shuffling the columns.  Renaming the suits, say swapping
+ * every Heart with every Spade, on the board, in hand and in the deck, doesn't
+ * change anything either, since flushes only care whether suits match.  So a
+ * position can be dressed up 120 &times; 120 &times; 24 ways, and every one of
+ * them is worth the same and has the same best move, moved to match.
+ * <p>
+ * The canonical form is the smallest of those dressings.  For each of the 24
+ * suit renamings and 120 column orders, the rows are packed into ints and
+ * sorted, which picks the best row order without trying all 120.  The smallest
+ * (card in hand, sorted rows, deck) wins.  The card in hand always gets the
+ * first suit, which leaves 6 renamings when there is one, so it's 720 or 2880
+ * tries of a few dozen instructions each.
+ * <p>
+ * {@link #getHash} hashes the canonical position the same way
+ * TranspositionTable.hash would, so it can key the table directly, and
+ * {@link #toCanonicalCell} and {@link #fromCanonicalCell} move answers between
+ * the original position and the canonical one.
+ * <p>
+ * Only cards from a default deck can be canonicalized.
+ */
+public class CanonicalSquare
+{
+    /** The 24 ways to rename the suits: SUIT_PERMS[p][s] is what suit s becomes */
+    private static final int[][] SUIT_PERMS = permutations(4);
+
+    /** The 120 column orders: COLUMN_PERMS[p][k] is the original column at position k */
+    private static final int[][] COLUMN_PERMS = permutations(5);
+
+    /** RENAMED[p][c] is card code c with its suit renamed by SUIT_PERMS[p] */
+    private static final int[][] RENAMED = new int[24][Card.BLANK_ID + 1];
+
+    static
+    {
+        for (int p = 0; p < 24; p++)
+            for (int id = 0; id < Card.BLANK_ID; id++)
+                RENAMED[p][id + 1] = (id & ~3 | SUIT_PERMS[p][id & 3]) + 1;
+    }
+
+    /** Canonical cards in row-major order, as card id + 1, or 0 for a blank */
+    private final int[] cells = new int[25];
+
+    /** The canonical card in hand, as card id + 1, or 0 for none */
+    private int next;
+
+    /** The canonical cards still in the deck, bit id for each */
+    private long deck;
+
+    /** rows[k] is the original row that became canonical row k */
+    private final int[] rows = new int[5];
+
+    /** columns[k] is the original column that became canonical column k */
+    private int[] columns;
+
+    /** How the suits were renamed */
+    private int[] suits;
+
+    private long hash;
+
+    private CanonicalSquare() {}
+
+    /**
+     * Finds the canonical form of a position.
+     *
+     * @param square the board
+     * @param next the card in hand, or Card.BLANK if there isn't one
+     * @param remaining the cards that can still be dealt
+     * @return the canonical form
+     * @throws IllegalArgumentException if any card isn't from a default deck
+     */
+    public static CanonicalSquare of(PokerSquare square, Card next, Deck remaining)
+    {
+        int[] codes = new int[25];
+        for (int cell = 0; cell < 25; cell++)
+            codes[cell] = code(square.getCard(cell / 5, cell % 5));
+        int nextCode = code(next);
+        long deckBits = 0;
+        for (int i = 0; i < remaining.getSize(); i++)
+        {
+            int c = code(remaining.getCard(i));
+            if (c == 0)
+                throw new IllegalArgumentException("blank card in the deck");
+            deckBits |= 1L << (c - 1);
+        }
+
+        CanonicalSquare best = new CanonicalSquare();
+        int[] bestRows = new int[5];
+        boolean found = false;
+        int[] renamed = new int[25];
+        int[] packed = new int[5], order = new int[5];
+        // only the renamings that give the card in hand the first suit can win
+        int lowest = nextCode == 0 ? 0 : (nextCode - 1 & ~3) + 1;
+        for (int sp = 0; sp < 24; sp++)
+        {
+            int[] rename = RENAMED[sp];
+            int n = rename[nextCode];
+            if (n != lowest)
+                continue;
+            long d = renameDeck(deckBits, SUIT_PERMS[sp]);
+            for (int cell = 0; cell < 25; cell++)
+                renamed[cell] = rename[codes[cell]];
+
+            for (int[] cp : COLUMN_PERMS)
+            {
+                // pack each row with its first card in the high bits, then sort the rows
+                for (int i = 0; i < 5; i++)
+                {
+                    int base = i * 5;
+                    int row = renamed[base + cp[0]] << 24 | renamed[base + cp[1]] << 18
+                              | renamed[base + cp[2]] << 12 | renamed[base + cp[3]] << 6
+                              | renamed[base + cp[4]];
+                    int k = i;
+                    for (; k > 0 && packed[k - 1] > row; k--)
+                    {
+                        packed[k] = packed[k - 1];
+                        order[k] = order[k - 1];
+                    }
+                    packed[k] = row;
+                    order[k] = i;
+                }
+
+                int cmp = found ? 0 : -1;
+                for (int k = 0; cmp == 0 && k < 5; k++)
+                    cmp = Integer.compare(packed[k], bestRows[k]);
+                if (cmp == 0)
+                    cmp = Long.compareUnsigned(d, best.deck);
+                if (cmp < 0)
+                {
+                    found = true;
+                    best.next = n;
+                    best.deck = d;
+                    best.suits = SUIT_PERMS[sp];
+                    best.columns = cp;
+                    System.arraycopy(packed, 0, bestRows, 0, 5);
+                    System.arraycopy(order, 0, best.rows, 0, 5);
+                }
+            }
+        }
+
+        for (int k = 0; k < 5; k++)
+            for (int j = 0; j < 5; j++)
+                best.cells[k * 5 + j] = bestRows[k] >>> (24 - 6 * j) & 0x3F;
+        best.hash = best.computeHash();
+        return best;
+    }
+
+    /** @return a card's id + 1, or 0 for a blank */
+    private static int code(Card card)
+    {
+        int id = card.getId();
+        if (id < 0)
+            throw new IllegalArgumentException("not a default card: " + card);
+        return id == Card.BLANK_ID ? 0 : id + 1;
+    }
+
+    /** Renames the suits of every card in a deck bit set */
+    private static long renameDeck(long bits, int[] perm)
+    {
+        long renamed = 0;
+        for (long b = bits; b != 0; b &= b - 1)
+        {
+            int id = Long.numberOfTrailingZeros(b);
+            renamed |= 1L << (id & ~3 | perm[id & 3]);
+        }
+        return renamed;
+    }
+
+    /** Hashes the canonical position with TranspositionTable's keys */
+    private long computeHash()
+    {
+        long h = TranspositionTable.cardKey(25, getNext());
+        for (int cell = 0; cell < 25; cell++)
+            h ^= TranspositionTable.cardKey(cell, getCard(cell));
+        for (long b = deck; b != 0; b &= b - 1)
+            h ^= TranspositionTable.deckKey(Card.fromId(Long.numberOfTrailingZeros(b)));
+        return h;
+    }
+
+    /** @return every ordering of 0 to n-1, in lexicographic order */
+    private static int[][] permutations(int n)
+    {
+        int count = 1;
+        for (int i = 2; i <= n; i++)
+            count *= i;
+        int[][] perms = new int[count][];
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++)
+            p[i] = i;
+        for (int k = 0; k < count; k++)
+        {
+            perms[k] = p.clone();
+            // step to the next permutation
+            int i = n - 2;
+            while (i >= 0 && p[i] > p[i + 1])
+                i--;
+            if (i < 0)
+                break;
+            int j = n - 1;
+            while (p[j] < p[i])
+                j--;
+            int t = p[i]; p[i] = p[j]; p[j] = t;
+            for (int a = i + 1, b = n - 1; a < b; a++, b--)
+            {
+                t = p[a]; p[a] = p[b]; p[b] = t;
+            }
+        }
+        return perms;
+    }
+
+    /**
+     * @return the hash of the canonical position.  Positions that are the same
+     *         game in disguise have the same hash.
+     */
+    public long getHash() {return hash;}
+
+    /** @return the card in a space of the canonical board */
+    public Card getCard(int cell)
+    {
+        return Card.fromId(cells[cell] == 0 ? Card.BLANK_ID : cells[cell] - 1);
+    }
+
+    /** @return the canonical card in hand, or Card.BLANK */
+    public Card getNext()
+    {
+        return Card.fromId(next == 0 ? Card.BLANK_ID : next - 1);
+    }
+
+    /** @return the canonical cards still in the deck, bit n set for the card with id n */
+    public long getDeck() {return deck;}
+
+    /**
+     * Renames a card's suit the way the position was renamed.
+     *
+     * @param card a card from a default deck, or Card.BLANK
+     * @return the card as it appears in the canonical position
+     */
+    public Card toCanonical(Card card)
+    {
+        int id = card.getId();
+        if (id < 0 || id == Card.BLANK_ID)
+            return card;
+        return Card.fromId(id & ~3 | suits[id & 3]);
+    }
+
+    /**
+     * @param cell a space on the original board
+     * @return where that space ended up on the canonical board
+     */
+    public int toCanonicalCell(int cell)
+    {
+        int row = 0, column = 0;
+        while (rows[row] != cell / 5)
+            row++;
+        while (columns[column] != cell % 5)
+            column++;
+        return row * 5 + column;
+    }
+
+    /**
+     * @param cell a space on the canonical board
+     * @return where that space came from on the original board
+     */
+    public int fromCanonicalCell(int cell)
+    {
+        return rows[cell / 5] * 5 + columns[cell % 5];
+    }
+
+    /** @return a new square holding the canonical board */
+    public PokerSquare toSquare()
+    {
+        PokerSquare square = new PokerSquare();
+        for (int cell = 0; cell < 25; cell++)
+            if (cells[cell] != 0)
+                square.setCard(cell / 5, cell % 5, getCard(cell));
+        return square;
+    }
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof CanonicalSquare))
+            return false;
+        CanonicalSquare other = (CanonicalSquare) o;
+        return next == other.next && deck == other.deck
+               && Arrays.equals(cells, other.cells);
+    }
+
+    public int hashCode()
+    {
+        return (int) (hash ^ hash >>> 32);
+    }
+}
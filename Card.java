@@ -1,18 +1,64 @@
 public class Card {
     /** The card's rank.  Example: <b>King</b> */
-    private String rank;
+    private final String rank;
     
     /** The card's suit.  Example: <b>Spades</b> */
-    private String suit;
+    private final String suit;
     
     /** The card's short rank.  Example: <b>K</b> */  
-    private String shortRank;
+    private final String shortRank;
     
     /** The card's short suit.  Example: <b>S</b> */  
-    private String shortSuit;
+    private final String shortSuit;
+    
+    /** The card's short rank + suit.  Example: <b>KS</b> */  
+    private final String shortString;
     
     /** The card's value.  Example: <b>13</b> */  
-    private int value;
+    private final int value;
+    
+    /** The card packed for HandEvaluator, or -1 if it can't be packed */
+    private final int code;
+    
+    /** The card's id in the canonical registry, or -1 if it isn't a canonical card */
+    private final int id;
+    
+    /** The default suit names, in the order used for HandEvaluator suit bits */
+    private static final String[] SUITS = {"Hearts", "Diamonds", "Spades", "Clubs"};
+    
+    /** The default short suit names, in the same order as SUITS */
+    private static final String[] SHORT_SUITS = {"H", "D", "S", "C"};
+    
+    /** The default rank names, indexed by value - 2 */
+    private static final String[] RANKS = {"Two", "Three", "Four", "Five", "Six", "Seven",
+        "Eight", "Nine", "Ten", "Jack", "Queen", "King", "Ace"};
+    
+    /** The default short rank names, indexed by value - 2 */
+    private static final String[] SHORT_RANKS = {"2", "3", "4", "5", "6", "7", "8", "9",
+        "T", "J", "Q", "K", "A"};
+    
+    /** The id of the shared blank card */
+    public static final int BLANK_ID = 52;
+    
+    /** The canonical cards: the 52 cards of a default deck, then the blank */
+    private static final Card[] CANONICAL = new Card[BLANK_ID + 1];
+    
+    static
+    {
+        for (int v = 2; v <= 14; v++)
+            for (int s = 0; s < SUITS.length; s++)
+            {
+                int id = (v - 2) * SUITS.length + s;
+                CANONICAL[id] = new Card(RANKS[v - 2], SUITS[s], v, SHORT_RANKS[v - 2], SHORT_SUITS[s], id);
+            }
+        CANONICAL[BLANK_ID] = new Card("Blanks", "Blank", 0, " ", " ", BLANK_ID);
+    }
+    
+    /**
+     * The one shared blank card.  Use this instead of <code>new Card()</code>
+     * for empty spaces, so they don't each cost an object.
+     */
+    public static final Card BLANK = CANONICAL[BLANK_ID];
     
     /**
      * The card's no-parameter constructor.
@@ -60,12 +106,82 @@ public class Card {
      * @param ss The card's short suit.
      */
     public Card (String r, String s, int v, String sr, String ss)
+    {
+        this(r, s, v, sr, ss, -1);
+    }
+    
+    /** Builds a card, canonical or not, with all of its fields. */
+    private Card (String r, String s, int v, String sr, String ss, int i)
     {
         suit = s;
         rank = r;
         value = v;
         shortSuit = ss;
         shortRank = sr;
+        shortString = sr + ss;
+        code = encode(v, s);
+        id = i;
+    }
+    
+    /**
+     * Provides the canonical card with a given id.
+     * <p>
+     * Ids run from 0 to 51 for the cards of a default deck, ordered by value and
+     * then by suit (Hearts, Diamonds, Spades, Clubs), so the Two of Hearts is 0
+     * and the Ace of Clubs is 51.  The blank card is {@link #BLANK_ID}.
+     * 
+     * @param id the card's id
+     * @return the shared card with that id
+     */
+    public static Card fromId(int id)
+    {
+        return CANONICAL[id];
+    }
+    
+    /**
+     * Provides a card with the given fields, reusing the canonical card if
+     * one matches exactly.  Decks should build their cards with this
+     * so that default cards are shared instead of copied.
+     * 
+     * @param r The card's rank
+     * @param s The card's suit
+     * @param v The card's value
+     * @param sr The card's short rank
+     * @param ss The card's short suit.
+     * @return the canonical card if there is one, otherwise a new card.
+     */
+    public static Card valueOf(String r, String s, int v, String sr, String ss)
+    {
+        int c = encode(v, s);
+        if (c > 0 && v >= 2 && v <= 14)
+        {
+            Card card = CANONICAL[(v - 2) * SUITS.length + Integer.numberOfTrailingZeros(c >>> 4)];
+            if (card.rank.equals(r) && card.shortRank.equals(sr) && card.shortSuit.equals(ss))
+                return card;
+        }
+        else if (v == 0 && BLANK.rank.equals(r) && BLANK.suit.equals(s)
+                 && BLANK.shortRank.equals(sr) && BLANK.shortSuit.equals(ss))
+            return BLANK;
+        return new Card(r, s, v, sr, ss);
+    }
+    
+    /**
+     * Packs a value and suit name into the int form used by HandEvaluator.
+     * <p>
+     * Only values up to 15 and the four default suit names can be packed.
+     * Any other card gets -1, and hands holding it fall back to the slower
+     * String-based checks in PokerHand.
+     */
+    private static int encode(int v, String s)
+    {
+        if (v == 0)
+            return HandEvaluator.BLANK;
+        if (v < 0 || v > HandEvaluator.VALUE_MASK)
+            return -1;
+        for (int i = 0; i < SUITS.length; i++)
+            if (SUITS[i].equals(s))
+                return HandEvaluator.encode(v, i);
+        return -1;
     }
     
     /**
@@ -98,7 +214,7 @@ public class Card {
      */
     public String getShortString()
     {
-        return getShortRank()+getShortSuit();
+        return shortString;
     }
     
     /**
@@ -143,4 +259,21 @@ public class Card {
      */
     public int getValue() {return value;}
     
+    /**
+     * Provides the card packed as an int for HandEvaluator.
+     * Blank cards are packed as 0.
+     * 
+     * @return the packed card, or -1 if the card's value or suit can't be packed.
+     */
+    public int getCode() {return code;}
+    
+    /**
+     * Provides the card's id in the canonical registry.
+     * Only cards from {@link #fromId} and {@link #valueOf} have ids.
+     * 
+     * @return the card's id from 0 to 52, or -1 for a non-canonical card.
+     * @see fromId
+     */
+    public int getId() {return id;}
+    
 }
\ No newline at end of file
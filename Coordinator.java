@@ -0,0 +1,277 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads a simulation over several Worker processes on this machine.
+ * <p>
+ * The run is cut into chunks of consecutive seeds.  Each Worker that connects
+ * is handed one chunk at a time, plays it with its own Simulator, and sends
+ * back the chunk's SimulationResult, which is a few kilobytes of totals however
+ * many games it holds.  A worker that dies or goes quiet for longer than the
+ * chunk timeout is dropped, and its chunk goes back on the front of the queue
+ * for someone else.  If no worker at all is connected for a minute, the run
+ * gives up.  Each chunk is merged exactly once, and game g is always
+ * shuffled with seed <code>firstSeed + g</code>, so the totals are the same as
+ * a single Simulator run with the same seeds, however the chunks were shared out.
+ * <p>
+ * The protocol is binary, over DataInput and DataOutput.  A worker sends
+ * {@link #MAGIC} and the coordinator answers with MAGIC and the policy name.
+ * Then, for each chunk, the coordinator sends the chunk's first seed and game
+ * count, and the worker answers with the first seed and the result.  A game
+ * count of 0 tells the worker there's nothing left.
+ * <p>
+ * From the command line:
+ * <pre>java Coordinator [games] [policy] [workers to start] [threads per worker] [firstSeed] [chunk size]</pre>
+ * starts that many Worker JVMs with the coordinator's own class path.  With 0
+ * workers it only prints its port and waits for workers started by hand with
+ * <pre>java Worker port [threads]</pre>
+ */
+public class Coordinator implements AutoCloseable
+{
+    /** Starts every conversation in both directions: "PSDW" */
+    public static final int MAGIC = 0x50534457;
+
+    /** How long a run waits with no workers connected before giving up */
+    private static final long NO_WORKERS_NANOS = 60_000_000_000L;
+
+    private final ServerSocket server;
+    private final String policy;
+
+    /** How long a worker may take over one chunk, in milliseconds */
+    private final int chunkTimeout;
+
+    /** Runs the accept loop and one thread per worker */
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Chunks waiting for a worker, as {first seed, games} */
+    private final BlockingDeque<long[]> pending = new LinkedBlockingDeque<>();
+
+    /** Counts down once per chunk merged */
+    private CountDownLatch unfinished;
+
+    private SimulationResult total;
+
+    private final AtomicInteger connected = new AtomicInteger();
+    private final AtomicInteger reassigned = new AtomicInteger();
+
+    private volatile boolean done;
+
+    /**
+     * Opens the coordinator's socket on the loopback address.
+     *
+     * @param port the port, or 0 for any free port
+     * @param policy the name of the policy the workers play, as for Simulator.getPolicy
+     * @param chunkTimeout how long a worker may take over one chunk before it's
+     *                     given up on, in milliseconds, or 0 to wait for ever
+     * @throws IOException if the socket can't be opened
+     */
+    public Coordinator(int port, String policy, int chunkTimeout) throws IOException
+    {
+        this.policy = policy;
+        this.chunkTimeout = chunkTimeout;
+        server = new ServerSocket(port, 64, InetAddress.getLoopbackAddress());
+        threads.execute(this::accept);
+    }
+
+    /** @return the port workers should connect to */
+    public int getPort() {return server.getLocalPort();}
+
+    /** @return the number of workers connected right now */
+    public int getConnected() {return connected.get();}
+
+    /** @return the number of chunks that had to be handed to another worker */
+    public int getReassigned() {return reassigned.get();}
+
+    /**
+     * Starts Worker processes on this machine, with this JVM's class path.
+     * Their output goes to this process's.
+     *
+     * @param count how many to start
+     * @param threadsEach how many threads each one plays on
+     * @return the processes
+     * @throws IOException if one can't be started
+     */
+    public List<Process> startWorkers(int count, int threadsEach) throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<Process> workers = new ArrayList<>();
+        for (int w = 0; w < count; w++)
+            workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "Worker",
+                                           String.valueOf(getPort()), String.valueOf(threadsEach))
+                        .inheritIO().start());
+        return workers;
+    }
+
+    /**
+     * Plays a run of seeded games on whatever workers connect, and waits for
+     * every chunk to come back.
+     *
+     * @param firstSeed the seed of the first game; game g uses firstSeed + g
+     * @param games how many games to play
+     * @param chunk the most games in one chunk
+     * @return the merged results, timed from the first chunk sent to the last received
+     * @throws IllegalStateException if no worker has been connected for a minute
+     */
+    public SimulationResult run(long firstSeed, long games, long chunk) throws InterruptedException
+    {
+        int chunks = (int) ((games + chunk - 1) / chunk);
+        total = new SimulationResult();
+        unfinished = new CountDownLatch(chunks);
+        long start = System.nanoTime();
+        for (long g = 0; g < games; g += chunk)
+            pending.add(new long[] {firstSeed + g, Math.min(chunk, games - g)});
+        long alone = System.nanoTime();
+        while (!unfinished.await(1, TimeUnit.SECONDS))
+        {
+            if (connected.get() > 0)
+                alone = System.nanoTime();
+            else if (System.nanoTime() - alone > NO_WORKERS_NANOS)
+                throw new IllegalStateException("no workers for a minute, with " + unfinished.getCount()
+                                                + " chunks still to play");
+        }
+        synchronized (this)
+        {
+            total.setNanos(System.nanoTime() - start);
+            return total;
+        }
+    }
+
+    /** Accepts workers until the coordinator is closed */
+    private void accept()
+    {
+        while (!server.isClosed())
+        {
+            try
+            {
+                Socket socket = server.accept();
+                threads.execute(() -> serve(socket));
+            }
+            catch (IOException e)
+            {
+                // closed, or a connection that failed before it started
+            }
+        }
+    }
+
+    /** Feeds chunks to one worker until there are none left or it fails */
+    private void serve(Socket socket)
+    {
+        long[] chunk = null;
+        connected.incrementAndGet();
+        try (socket)
+        {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(chunkTimeout);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a worker");
+            out.writeInt(MAGIC);
+            out.writeUTF(policy);
+            out.flush();
+
+            while (true)
+            {
+                while (chunk == null && !done)
+                    chunk = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (chunk == null)
+                    break;
+                out.writeLong(chunk[0]);
+                out.writeLong(chunk[1]);
+                out.flush();
+                if (in.readLong() != chunk[0])
+                    throw new IOException("answer for the wrong chunk");
+                SimulationResult result = SimulationResult.readFrom(in);
+                if (result.getGames() != chunk[1])
+                    throw new IOException("played " + result.getGames() + " games, not " + chunk[1]);
+                synchronized (this)
+                {
+                    total.merge(result);
+                }
+                chunk = null;
+                unfinished.countDown();
+            }
+            out.writeLong(0);
+            out.writeLong(0);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            System.err.println("worker " + socket.getRemoteSocketAddress() + " dropped: " + e);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            connected.decrementAndGet();
+            if (chunk != null)
+            {
+                reassigned.incrementAndGet();
+                pending.addFirst(chunk);
+            }
+        }
+    }
+
+    /** Tells the workers to stop, stops accepting new ones, and waits a little for them to hear it */
+    public void close() throws IOException
+    {
+        done = true;
+        server.close();
+        threads.shutdown();
+        try
+        {
+            threads.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        String policy = args.length > 1 ? args[1] : "random";
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int threadsEach = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        long firstSeed = args.length > 4 ? Long.parseLong(args[4]) : ThreadLocalRandom.current().nextLong();
+        long chunk = args.length > 5 ? Long.parseLong(args[5]) : Math.max(1000, games / Math.max(1, workers) / 16);
+
+        Coordinator coordinator = new Coordinator(0, policy, 600000);
+        List<Process> processes;
+        try
+        {
+            System.out.println("Policy: " + policy + ", port: " + coordinator.getPort() + ", workers: " + workers
+                               + ", first seed: " + firstSeed + ", chunk: " + chunk);
+            processes = coordinator.startWorkers(workers, threadsEach);
+            SimulationResult result = coordinator.run(firstSeed, games, chunk);
+            System.out.print(result);
+            System.out.println("Chunks reassigned: " + coordinator.getReassigned());
+        }
+        finally
+        {
+            coordinator.close();
+        }
+        for (Process p : processes)
+            p.waitFor();
+    }
+}
@@ -1,8 +1,43 @@
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 public class Deck { 
-    /** The deck of cards */
-    protected ArrayList<Card> deck;
+    /**
+     * The deck of cards.  Cards that have been dealt stay at the front of the
+     * array, before <code>top</code>, so the deck can be reset without rebuilding it.
+     */
+    protected Card[] cards;
+
+    /** The position of the next card to be dealt */
+    protected int top;
+
+    /** One past the position of the last card in the deck */
+    protected int bottom;
+
+    /** The order the cards were in when the deck was built, for reset */
+    private Card[] original;
+
+    /** The Metrics counts of the thread that last dealt a card */
+    private Metrics.Counts counts;
+
+    /** A live, read-only view of the undealt cards */
+    private final List<Card> remaining = new AbstractList<Card>() {
+        public Card get(int i)
+        {
+            if (i < 0 || i >= bottom - top)
+                throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + (bottom - top));
+            return cards[top + i];
+        }
+
+        public int size()
+        {
+            return bottom - top;
+        }
+    };
 
     /** The default card ranks by name */
     static final private String[] rk = {"Ace", "Two", "Three", "Four", "Five", "Six",
@@ -28,12 +63,41 @@ public class Deck {
      * two loops that traverse the length of the ranks and the suits.
      * It also involves invoking the five-parameter version of the card constructor.
      * <p>
-     * Actaully, mine just uses the <code>this</code> keyword and hands the arrays
-     * off to the five-parameter constructor, because I'm lazy.  This is why the arrays
-     * at the top all
+     * The cards are the shared canonical cards from Card.fromId, laid out in the
+     * same order the arrays at the top would give, so no cards are created at all.
      */
     public Deck() {
-        this(rk,st,vl,rkShort,stShort);
+        this(rk.length * st.length);
+        for (int i = 0; i < rk.length; i++)
+            for (int j = 0; j < st.length; j++)
+                addCard(Card.fromId((vl[i] - 2) * st.length + j));
+    }
+    
+    /**
+     * Creates an empty deck with room for a number of cards.
+     * <p>
+     * This is for subclasses such as PokerHand that fill themselves.
+     * The deck grows if more cards are added.
+     * 
+     * @param capacity how many cards to make room for
+     */
+    protected Deck(int capacity) {
+        cards = new Card[capacity];
+        original = new Card[capacity];
+    }
+    
+    /**
+     * Creates a deck holding the given cards, top card first.
+     * <p>
+     * This is for subclasses such as PokerHand, so they can be filled without
+     * calling a method on themselves before they are built.
+     * 
+     * @param cards the cards, which are copied
+     */
+    protected Deck(Card[] cards) {
+        this.cards = cards.clone();
+        original = cards.clone();
+        bottom = cards.length;
     }
     
     /**
@@ -47,10 +111,10 @@ public class Deck {
      * the ones provided at the top of this class.
      */
     public Deck(String[] ranks, String[] suits, int[] values) {
-        deck = new ArrayList<Card>();
+        this(ranks.length * suits.length);
         for (int i = 0; i < ranks.length; i++)
             for (String suit : suits)
-                deck.add(new Card(ranks[i], suit, values[i]));
+                addCard(Card.valueOf(ranks[i], suit, values[i], " ", " "));
     }
     
     /** 
@@ -58,31 +122,41 @@ public class Deck {
      * <p>
      * It instantiates the deck and then populates it.  This involves
      * two loops that traverse the length of the ranks and the suits.
-     * It also involves invoking the five-parameter version of the card constructor.
+     * Cards come from Card.valueOf, so a deck built from the default arrays
+     * shares the canonical cards instead of making 52 new ones.
      * <p>
      * This constructor exists in case you wish to use card definitions other than
      * the ones provided at the top of this class.
      */
     public Deck(String[] ranks, String[] suits, int[] values, String[] shortRanks, String[] shortSuits) {
-        deck = new ArrayList<Card>();
+        this(ranks.length * suits.length);
         for (int i = 0; i < ranks.length; i++)
             for (int j = 0; j < suits.length; j++)
-                deck.add(new Card(ranks[i], suits[j], values[i], shortRanks[i], shortSuits[j]));
+                addCard(Card.valueOf(ranks[i], suits[j], values[i], shortRanks[i], shortSuits[j]));
     }
     
     /**
      * Adds a card to the bottom of the deck.
+     * <p>
+     * It is final because the constructors here fill the deck with it before
+     * any subclass is ready.
      * 
      * @param card the card to be added
      */
-    public void addCard(Card card)
+    public final void addCard(Card card)
     {
-      deck.add(card);    
+      if (bottom == cards.length)
+      {
+        cards = Arrays.copyOf(cards, Math.max(4, cards.length * 2));
+        original = Arrays.copyOf(original, cards.length);
+      }
+      original[bottom] = card;
+      cards[bottom++] = card;    
     }
     
     /**
      * Return a card at a given position in the deck.  If the card does not exist,
-     * an empty card is returned instead.
+     * the shared blank card is returned instead.
      * 
      * @param i the position of the card you want to check.
      * @return the card at a given position, 
@@ -90,13 +164,13 @@ public class Deck {
      */
     public Card getCard(int i)
     {
-        return (i < deck.size() ? deck.get(i) : new Card());
+        return (i >= 0 && i < bottom - top ? cards[top + i] : Card.BLANK);
     }
     
      /**
      * Removes and returns a card at a given position in the deck.
      * If the card does not exist, no card is removed, 
-     * and an empty card is returned instead.
+     * and the shared blank card is returned instead.
      * 
      * @param i the position of the card you want to check.
      * @return the now-removed card at a given position, 
@@ -104,7 +178,65 @@ public class Deck {
      */
     public Card removeCard(int i)
     {
-        return (i < deck.size() ? deck.remove(i) : new Card());
+        if (i < 0 || i >= bottom - top)
+            return Card.BLANK;
+        if (i == 0)
+            return cards[top++];
+        // move the card to the top and deal it from there, so it stays
+        // with the other dealt cards until the deck is reset
+        Card card = cards[top + i];
+        System.arraycopy(cards, top, cards, top + 1, i);
+        cards[top] = card;
+        top++;
+        return card;
+    }
+
+    /**
+     * Deals the top card of the deck.
+     * <p>
+     * This just moves the deal cursor along, so it takes the same time
+     * no matter how many cards are left.
+     * 
+     * @return the top card, or the shared blank card if the deck is empty.
+     */
+    public Card dealCard()
+    {
+        if (top == bottom)
+            return Card.BLANK;
+        if (Metrics.ENABLED)
+        {
+            Metrics.Counts counts = Metrics.counts(this.counts);
+            if (counts != this.counts)
+                this.counts = counts;
+            counts.deals++;
+        }
+        return cards[top++];
+    }
+
+    /**
+     * Puts every dealt card back, and puts the deck back in the order it was built in.
+     * <p>
+     * Nothing is allocated, so one deck can be reset and shuffled for every game
+     * instead of building a new one.  A reset deck shuffled with a seed gives the
+     * same deal as a new deck shuffled with that seed.
+     */
+    public void reset()
+    {
+        System.arraycopy(original, 0, cards, 0, bottom);
+        top = 0;
+    }
+
+    /**
+     * Provides the cards that haven't been dealt yet, top card first.
+     * <p>
+     * The list is a read-only view of the deck itself, not a copy, so it always
+     * shows the current state of the deck and costs nothing to get.
+     * 
+     * @return the undealt cards
+     */
+    public List<Card> getRemaining()
+    {
+        return remaining;
     }
 
     /**
@@ -116,22 +248,54 @@ public class Deck {
      */
     public int getSize()
     {
-        return deck.size();   
+        return bottom - top;   
     }
 
     /**
      * This is a standard shuffle routine
      * 
-     * It works by creating a new empty deck, randomly moving cards
-     * from the original deck to the new deck, and then pointing
-     * the memory reference of the old deck to the new deck.
+     * It uses the calling thread's own random number generator, so
+     * threads shuffling their own decks never wait on each other.
      */  
     public void shuffle()
     {
-        ArrayList<Card> newDeck = new ArrayList<Card>();
-        while (deck.size() > 0)
-            newDeck.add(deck.remove((int)(Math.random() * deck.size())));
-        deck = newDeck;
+        shuffle(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Shuffles the deck so that the same seed always gives the same order.
+     * <p>
+     * Starting from a new or reset Deck, <code>shuffle(seed)</code> reproduces a game's
+     * deal exactly, which makes it possible to replay and debug any game
+     * as long as its seed was kept.
+     * 
+     * @param seed the seed for the shuffle
+     */
+    public void shuffle(long seed)
+    {
+        shuffle(new SplittableRandom(seed));
+    }
+
+    /**
+     * Shuffles the deck in place with the Fisher-Yates algorithm.
+     * <p>
+     * Working back from the bottom of the deck, each card is swapped with a
+     * random card at or above it.  Every order is equally likely, and no
+     * cards are copied into a new list.  Only the undealt cards are shuffled.
+     * 
+     * @param random the random number generator to use
+     */
+    public void shuffle(RandomGenerator random)
+    {
+        if (Metrics.ENABLED)
+            Metrics.SHUFFLES.increment();
+        for (int i = bottom - 1; i > top; i--)
+        {
+            int j = top + random.nextInt(i - top + 1);
+            Card card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
+        }
     }
 
     /**
@@ -142,10 +306,10 @@ public class Deck {
      */
     public String toString()
     {            
-        String ret = "";
-        for (Card card: deck)
-            ret += card + "\n";
-        return ret;
+        StringBuilder ret = new StringBuilder();
+        for (Card card: remaining)
+            ret.append(card).append('\n');
+        return ret.toString();
     }
 
      /**
@@ -156,9 +320,9 @@ public class Deck {
      */  
     public String getShortString()
     {
-        String ret = "";
-        for (Card card: deck)
-            ret += card.getShortString() + " ";
-        return ret;
+        StringBuilder ret = new StringBuilder(3 * getSize());
+        for (Card card: remaining)
+            ret.append(card.getShortString()).append(' ');
+        return ret.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,461 @@
+import java.util.Arrays;
+
+/**
+ * Finds the placement with the highest expected final score when only a few
+ * spaces are left on a PokerSquare.
+ * <p>
+ * Near the end of the game there is no need to sample: the solver tries every
+ * empty space for the next card, then every card that could be dealt after it
+ * in every space that is still empty, and so on until the square is full.  The
+ * value of a position is the best space for the card in hand, averaged over
+ * every card that could come next.  This is expectimax, and the answer is exact.
+ * <p>
+ * Many different deal orders lead to the same position.  Positions are keyed by
+ * which card sits in which of the originally empty spaces, and each one is only
+ * solved once per call.
+ * <p>
+ * Many of the cards that could be dealt next are also interchangeable.  Cards of
+ * the same rank only behave differently if one of them could still complete a
+ * flush in a line with empty spaces, so at each deal the cards are grouped by
+ * rank and by "live" suit, and each group is solved once and weighted by its size.
+ * <p>
+ * The work grows very quickly with the number of empty spaces, so the solver
+ * only takes squares with at most <code>maxEmpty</code> of them.  For bigger
+ * squares it hands the decision to a fallback policy.
+ * <p>
+ * A solver can share a TranspositionTable with other solvers.  Each solve
+ * stores its answer, and the answer for every card that could come next, in
+ * every space it could go.  The next move of the same game is one of those, so
+ * after the first solve of a game the rest are usually just lookups.
+ */
+public class EndgameSolver implements PlacementPolicy
+{
+    /** The most empty spaces the solver will take on */
+    private final int maxEmpty;
+
+    /** Decides when there are too many empty spaces to solve */
+    private final PlacementPolicy fallback;
+
+    /** The square being solved, played on and put back as the search goes */
+    private PokerSquare board;
+
+    /** The spaces that were empty when the solve started */
+    private int[] empty;
+
+    /** The cards that can still be dealt, followed by the card in hand */
+    private Card[] cards;
+
+    /** Which cards in the cards array have been placed */
+    private boolean[] used;
+
+    /** The value of each card in the cards array */
+    private int[] values;
+
+    /** The suit index of each card, or -1 if it can't be grouped with other cards */
+    private int[] suits;
+
+    /** Per search depth: how many undealt cards fall in each group */
+    private int[][] groupSize;
+
+    /** Per search depth: one card from each group */
+    private int[][] groupCard;
+
+    /** Per search depth: the groups seen at that depth */
+    private int[][] groups;
+
+    /** Groups are value * 5 + suit, where suit 4 means "any suit that can't make a flush" */
+    private static final int GROUPS = 16 * 5;
+
+    /** Per search depth: the group of each undealt card */
+    private int[][] groupOf;
+
+    /** Answers shared with other solvers, or null */
+    private final TranspositionTable table;
+
+    /** The table key of the cards on the square when the solve started */
+    private long boardKey;
+
+    /** The table key of the cards that could be dealt when the solve started */
+    private long deckKey;
+
+    /** The table key of the search's current square and undealt cards, without a card in hand */
+    private long pathKey;
+
+    /** How many cards deep into a search answers are shared through the table */
+    private static final int SHARE_DEPTH = 2;
+
+    /** Values of positions already solved, by key */
+    private final LongDoubleMap memo = new LongDoubleMap();
+
+    /** The expected final score of the last solve */
+    private double expected;
+
+    /**
+     * Creates a solver.
+     *
+     * @param maxEmpty the most empty spaces to solve exactly, up to 10
+     * @param fallback decides when the square has more empty spaces than that
+     */
+    public EndgameSolver(int maxEmpty, PlacementPolicy fallback)
+    {
+        this(maxEmpty, fallback, null);
+    }
+
+    /**
+     * Creates a solver that shares its answers through a table.
+     *
+     * @param maxEmpty the most empty spaces to solve exactly, up to 10
+     * @param fallback decides when the square has more empty spaces than that
+     * @param table where solved positions are kept, or null to keep none
+     */
+    public EndgameSolver(int maxEmpty, PlacementPolicy fallback, TranspositionTable table)
+    {
+        if (maxEmpty < 1 || maxEmpty > 10)
+            throw new IllegalArgumentException("maxEmpty must be from 1 to 10: " + maxEmpty);
+        this.maxEmpty = maxEmpty;
+        this.fallback = fallback;
+        this.table = table;
+    }
+
+    /** @return the most empty spaces the solver will take on */
+    public int getMaxEmpty() {return maxEmpty;}
+
+    /**
+     * @return the expected final score of the best placement found by the last
+     *         call to getBestCell
+     */
+    public double getExpectedScore() {return expected;}
+
+    /**
+     * Counts the empty spaces on a square.
+     *
+     * @return true if the solver will take the square on
+     */
+    public boolean canSolve(PokerSquare square)
+    {
+        int n = 0;
+        for (int cell = 0; cell < 25; cell++)
+            if (square.isEmpty(cell / 5, cell % 5))
+                n++;
+        return n > 0 && n <= maxEmpty;
+    }
+
+    public int chooseCell(PokerSquare square, Card next, Deck remaining)
+    {
+        if (!canSolve(square))
+            return fallback.chooseCell(square, next, remaining);
+        return getBestCell(square, next, remaining);
+    }
+
+    public void startGame(long seed)
+    {
+        fallback.startGame(seed);
+    }
+
+    /**
+     * Finds the empty space that gives the highest expected final score.
+     *
+     * @param square the square in progress.  It is not changed.
+     * @param next the card to be placed
+     * @param remaining the cards that can still be dealt, not including next
+     * @return the best space, or -1 if the square has no empty spaces or too many
+     */
+    public int getBestCell(PokerSquare square, Card next, Deck remaining)
+    {
+        if (!canSolve(square))
+            return -1;
+
+        long key = 0;
+        if (table != null)
+        {
+            key = TranspositionTable.hash(square, next, remaining);
+            long data = table.probe(key);
+            if (data != TranspositionTable.MISS)
+            {
+                expected = TranspositionTable.getValue(data);
+                return TranspositionTable.getBestCell(data);
+            }
+        }
+
+        board = new PokerSquare(square);
+        int[] e = new int[25];
+        int k = 0;
+        for (int cell = 0; cell < 25; cell++)
+            if (square.isEmpty(cell / 5, cell % 5))
+                e[k++] = cell;
+        empty = Arrays.copyOf(e, k);
+
+        int m = remaining.getSize();
+        if (m < k - 1)
+            throw new IllegalArgumentException("only " + m + " cards left to fill " + (k - 1) + " spaces");
+        cards = new Card[m + 1];
+        for (int i = 0; i < m; i++)
+            cards[i] = remaining.getCard(i);
+        cards[m] = next;
+        used = new boolean[m + 1];
+        used[m] = true;
+        values = new int[m + 1];
+        suits = new int[m + 1];
+        for (int i = 0; i <= m; i++)
+        {
+            int code = cards[i].getCode();
+            values[i] = code & HandEvaluator.VALUE_MASK;
+            suits[i] = code > 0 ? Integer.numberOfTrailingZeros(code >>> 4) : -1;
+        }
+        groupSize = new int[k][GROUPS + m + 1];
+        groupCard = new int[k][GROUPS + m + 1];
+        groups = new int[k][m + 1];
+        groupOf = new int[k][m + 1];
+        memo.clear();
+        if (table != null)
+        {
+            boardKey = 0;
+            for (int cell = 0; cell < 25; cell++)
+                boardKey ^= TranspositionTable.cardKey(cell, square.getCard(cell / 5, cell % 5));
+            deckKey = key ^ boardKey ^ TranspositionTable.cardKey(25, next);
+        }
+
+        int best = -1;
+        expected = -1;
+        for (int s = 0; s < k; s++)
+        {
+            pathKey = boardKey ^ deckKey;
+            double v = place(0, 0, m, s);
+            if (v > expected)
+            {
+                expected = v;
+                best = empty[s];
+            }
+        }
+        board = null;
+        if (table != null)
+            table.store(key, expected, k, best);
+        return best;
+    }
+
+    /**
+     * Puts a card in one of the original empty spaces, solves the position that
+     * leaves, and takes the card back out.
+     *
+     * @param key the position before the card is placed
+     * @param filled which original empty spaces are filled, one bit each
+     * @param card the card's index in the cards array
+     * @param slot which original empty space to put it in
+     * @return the value of the position with the card placed
+     */
+    private double place(long key, int filled, int card, int slot)
+    {
+        int cell = empty[slot];
+        long moved = 0;
+        if (table != null)
+        {
+            moved = TranspositionTable.cardKey(cell, cards[card]);
+            if (card != cards.length - 1)
+                moved ^= TranspositionTable.deckKey(cards[card]);
+            pathKey ^= moved;
+        }
+        board.place(cell, cards[card]);
+        double v = deal(key | (long) (card + 1) << (6 * slot), filled | 1 << slot);
+        board.undo();
+        pathKey ^= moved;
+        return v;
+    }
+
+    /**
+     * Finds the value of a position where the next card hasn't been dealt yet:
+     * the best placement for each card that could come, averaged over the cards.
+     *
+     * @param key which card is in each original empty space, 6 bits per space
+     * @param filled which original empty spaces are filled, one bit each
+     * @return the expected final score
+     */
+    private double deal(long key, int filled)
+    {
+        int open = empty.length - Integer.bitCount(filled);
+        if (open == 0)
+            return board.getScore();
+
+        double known = memo.get(key);
+        if (!Double.isNaN(known))
+            return known;
+
+        int depth = empty.length - open;
+        int[] size = groupSize[depth], card = groupCard[depth], seen = groups[depth];
+        int n = group(depth, size, card, seen);
+
+        double total = 0;
+        int count = 0;
+        // the first open space, which is the only one when open == 1
+        int first = Integer.numberOfTrailingZeros(~filled), cell = empty[first];
+        for (int g = 0; g < n; g++)
+        {
+            int c = card[seen[g]], weight = size[seen[g]];
+            size[seen[g]] = 0;
+            double best = 0;
+            int bestSlot = first;
+            if (open == 1)
+            {
+                // only one place for the last card to go
+                board.place(cell, cards[c]);
+                best = board.getScore();
+                board.undo();
+            }
+            else
+            {
+                used[c] = true;
+                for (int s = 0; s < empty.length; s++)
+                    if ((filled & 1 << s) == 0)
+                    {
+                        double v = place(key, filled, c, s);
+                        if (v > best)
+                        {
+                            best = v;
+                            bestSlot = s;
+                        }
+                    }
+                used[c] = false;
+            }
+            if (depth <= SHARE_DEPTH && open > 1 && table != null)
+                share(seen[g], depth, bestSlot, best);
+            total += weight * best;
+            count += weight;
+        }
+
+        double v = total / count;
+        memo.put(key, v);
+        return v;
+    }
+
+    /**
+     * Stores the answer for each card in a group as the position a later move
+     * of the game would see: the card in hand, and the rest of the cards still
+     * to come.  Only positions near the top of the search are stored, since
+     * deeper ones are many and quick to solve again, and positions with one
+     * space left aren't worth storing at all.
+     */
+    private void share(int group, int depth, int bestSlot, double best)
+    {
+        int[] of = groupOf[depth];
+        for (int c = 0; c < cards.length; c++)
+            if (!used[c] && of[c] == group)
+                table.store(pathKey ^ TranspositionTable.cardKey(25, cards[c])
+                            ^ TranspositionTable.deckKey(cards[c]),
+                            best, empty.length - depth, empty[bestSlot]);
+    }
+
+    /**
+     * Sorts the undealt cards into groups that are interchangeable from here on.
+     * <p>
+     * A suit is live if some line with empty spaces holds only cards of that
+     * suit (or no cards at all), and there are enough undealt cards of the suit
+     * to fill it.  Cards of a live suit are grouped by value and suit, and all
+     * other cards just by value.
+     *
+     * @param depth how many cards have been placed in the search so far
+     * @param size filled in with the number of cards in each group
+     * @param card filled in with one card from each group
+     * @param seen filled in with the groups found
+     * @return the number of groups found
+     */
+    private int group(int depth, int[] size, int[] card, int[] seen)
+    {
+        int suitCounts = 0;
+        for (int c = 0; c < cards.length; c++)
+            if (!used[c] && suits[c] >= 0)
+                suitCounts += 1 << (suits[c] << 2);
+
+        int live = 0;
+        for (int line = 0; line < 10; line++)
+        {
+            int filled = board.getLineFilled(line);
+            if (filled == 5)
+                continue;
+            int lineSuits = board.getLineSuitCounts(line);
+            for (int s = 0; s < 4; s++)
+                if ((lineSuits >>> (s << 2) & 0xF) == filled
+                    && (suitCounts >>> (s << 2) & 0xF) >= 5 - filled)
+                    live |= 1 << s;
+        }
+
+        int n = 0;
+        for (int c = 0; c < cards.length; c++)
+        {
+            if (used[c])
+                continue;
+            int g;
+            if (suits[c] < 0)
+                g = GROUPS + c;
+            else
+                g = values[c] * 5 + ((live & 1 << suits[c]) != 0 ? suits[c] : 4);
+            groupOf[depth][c] = g;
+            if (size[g]++ == 0)
+            {
+                card[g] = c;
+                seen[n++] = g;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * A hash map from long keys to double values that doesn't box either one.
+     * Missing keys read as NaN.
+     */
+    private static class LongDoubleMap
+    {
+        private long[] keys = new long[1 << 10];
+        private double[] values = new double[1 << 10];
+        private boolean[] full = new boolean[1 << 10];
+        private int size;
+
+        double get(long key)
+        {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; full[i]; i = (i + 1) & mask)
+                if (keys[i] == key)
+                    return values[i];
+            return Double.NaN;
+        }
+
+        void put(long key, double value)
+        {
+            if (2 * (size + 1) > keys.length)
+                grow();
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (full[i] && keys[i] != key)
+                i = (i + 1) & mask;
+            if (!full[i])
+                size++;
+            full[i] = true;
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        void clear()
+        {
+            Arrays.fill(full, false);
+            size = 0;
+        }
+
+        private void grow()
+        {
+            long[] oldKeys = keys;
+            double[] oldValues = values;
+            boolean[] oldFull = full;
+            keys = new long[oldKeys.length * 2];
+            values = new double[oldKeys.length * 2];
+            full = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++)
+                if (oldFull[i])
+                    put(oldKeys[i], oldValues[i]);
+        }
+
+        private static int hash(long key)
+        {
+            key *= 0x9E3779B97F4A7C15L;
+            return (int) (key ^ key >>> 32);
+        }
+    }
+}
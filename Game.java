@@ -1,8 +1,24 @@
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 public class Game
 {
-    public static void main(String[] args)
+    /**
+     * Plays a game at the console.  Pass <b>-ansi</b> to redraw only what
+     * changes after each move, for ANSI terminals.
+     * <p>
+     * The board on screen is drawn from the square's events, not from the
+     * square: the renderer subscribes to the square and draws each move as it
+     * is delivered, while the game thread goes straight on to the next card.
+     * The advisor tries cards on the real square while it thinks, but those
+     * tries are never published, so they never show.  If the screen ever
+     * falls behind and misses moves, the game thread draws the square itself
+     * from then on.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
     {
         String[] rk = {"Ace", "Two", "Three", "Four", "Five", "Six",
                 "Seven", "Eight", "Nine", "Ten", "Jack", "Queen", "King"} ;
@@ -24,17 +40,24 @@ public class Game
         //shuffle the deck()
         // deck52.shuffle();
 
+        boolean ansi = args.length > 0 && args[0].equals("-ansi");
+        BoardRenderer renderer = new BoardRenderer(System.out, ansi);
+        PlacementAdvisor advisor = new PlacementAdvisor();
         PokerSquare square = new PokerSquare();
         Deck deck = new Deck();
         deck.shuffle();
-        System.out.println(square.toString());
-        square.buildHands();
-        System.out.println(square.getSummary());
+        renderer.render(square);
+        Screen screen = new Screen(renderer, ansi);
+        square.subscribe(screen);
 
         for (int i = 0; i < 25; i++)
         {
-            next = deck.removeCard(0);
+            next = deck.dealCard();
+            renderer.clearPrompt();
             System.out.println("The next card is: -> " + next);
+            // a tenth of a second for the hint, less the time the last round can run over
+            int hint = advisor.getBestCell(square, next, deck, System.nanoTime() + 90000000L);
+            System.out.println("Suggested coordinate: " + PlacementAdvisor.getCoordinate(hint));
             while (true)
             {   
                 System.out.print("Enter the coordinate for the next card -> ");
@@ -50,12 +73,74 @@ public class Game
                 System.out.print("Invalid coordinate. ");
             }
             square.setCard(xPos, yPos, next);
-            System.out.print('\u000C');
-            System.out.println(square.toString());
-            square.buildHands();
-            System.out.println(square.getSummary());
+            if (screen.failed)
+            {
+                if (!ansi)
+                    System.out.print('\u000C');
+                renderer.render(square);
+            }
+        }
+        square.closeEvents();
+        // the game is over, so it's worth a moment for the last move to be drawn before saying so
+        screen.done.await(1, TimeUnit.SECONDS);
+        renderer.clearPrompt();
+        System.out.println("\nGAME OVER! Final score: " + square.getScore());
+    }
+
+    /**
+     * Draws each move on the thread it is delivered on.  The game thread
+     * never waits for it, except for a moment at the end.
+     */
+    private static final class Screen implements Flow.Subscriber<List<SquareEvent>>
+    {
+        private final BoardRenderer renderer;
+        private final boolean ansi;
+        private Flow.Subscription subscription;
+
+        /** Set once a move has been missed or couldn't be drawn */
+        volatile boolean failed;
+
+        /** Counted down when there is nothing more to draw */
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Screen(BoardRenderer renderer, boolean ansi)
+        {
+            this.renderer = renderer;
+            this.ansi = ansi;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(List<SquareEvent> move)
+        {
+            try
+            {
+                if (!ansi)
+                    System.out.print('\u000C');
+                renderer.render(move);
+            }
+            catch (IOException e)
+            {
+                subscription.cancel();
+                onError(e);
+            }
+        }
+
+        public void onError(Throwable error)
+        {
+            // the game goes on; it just draws the square itself from now on
+            failed = true;
+            done.countDown();
+        }
+
+        public void onComplete()
+        {
+            done.countDown();
         }
-        System.out.println("\nGAME OVER!");
     }
 
        
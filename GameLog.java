@@ -0,0 +1,351 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A compact binary log of finished games, written through memory-mapped files.
+ * <p>
+ * Every game is one fixed-size record of {@link #RECORD_BYTES} bytes, little-endian:
+ * <pre>
+ *  0  long     the seed the deck was shuffled with, or 0 if there wasn't one
+ *  8  byte[25] the card ids in the order they were dealt
+ * 33  byte[25] the space each of those cards was put in
+ * 58  short    the final score
+ * 60  byte[5]  the ten line categories, rows first, two per byte, low nibble first
+ * 65  byte     1 once the record is completely written, 0 before
+ * 66  byte[6]  unused</pre>
+ * The file starts with a {@link #HEADER_BYTES}-byte header holding {@link #MAGIC}
+ * and the record size.  A record is under a tenth the size of the text from
+ * PokerSquare.toString and getSummary, and reading one back is a few loads
+ * instead of a parse.
+ * <p>
+ * The {@link Writer} is safe to share between threads.  Each append takes the
+ * next record number from an AtomicLong and writes into its own 72 bytes of the
+ * mapping, so appends never wait on each other.  The file is mapped in
+ * segments of {@link #SEGMENT_RECORDS} records, and a new segment is only
+ * mapped, under a lock, when the first record in it is reached.  The done flag
+ * is written last, so a {@link Reader} skips any record that a writer reserved
+ * but never finished.
+ */
+public class GameLog
+{
+    /** The first eight bytes of every log */
+    public static final long MAGIC = 0x31474F4C51535050L; // "PPSQLOG1"
+
+    public static final int HEADER_BYTES = 64;
+    public static final int RECORD_BYTES = 72;
+
+    /** Records per mapped segment, a little over 72 MB */
+    public static final int SEGMENT_RECORDS = 1 << 20;
+
+    private static final int SEED = 0, CARDS = 8, CELLS = 33, SCORE = 58, CATEGORIES = 60, DONE = 65;
+
+    private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_BYTES;
+
+    private GameLog() {}
+
+    /**
+     * Appends games to a log file.  Opening a file that already holds a log
+     * adds to the end of it.
+     */
+    public static final class Writer implements Closeable
+    {
+        private final FileChannel channel;
+
+        /** The next record number to hand out */
+        private final AtomicLong next;
+
+        /** The number of appends writing right now, which close waits for */
+        private final AtomicInteger writing = new AtomicInteger();
+
+        private volatile boolean closed;
+
+        /** The mapped segments so far.  Replaced, never changed, when a segment is added. */
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+        /**
+         * Opens or creates a log for writing.
+         *
+         * @param path the log file
+         * @throws IOException if the file can't be opened or isn't a log
+         */
+        public Writer(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE);
+            long size = channel.size();
+            if (size == 0)
+            {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                header.putLong(MAGIC).putInt(RECORD_BYTES).rewind();
+                channel.write(header, 0);
+                size = HEADER_BYTES;
+            }
+            else
+                checkHeader(channel);
+            next = new AtomicLong((size - HEADER_BYTES) / RECORD_BYTES);
+        }
+
+        /**
+         * Records one finished game.
+         *
+         * @param seed the seed the deck was shuffled with, or 0
+         * @param cardIds the ids of the 25 cards, in the order they were dealt
+         * @param cells the space each card went in, in the same order
+         * @param square the finished square
+         * @return the record's number
+         * @throws IllegalArgumentException if a card isn't from a default deck
+         * @throws IllegalStateException if the log has been closed
+         */
+        public long append(long seed, int[] cardIds, int[] cells, PokerSquare square)
+        {
+            writing.incrementAndGet();
+            try
+            {
+                if (closed)
+                    throw new IllegalStateException("the game log is closed");
+                return write(seed, cardIds, cells, square);
+            }
+            finally
+            {
+                writing.decrementAndGet();
+            }
+        }
+
+        private long write(long seed, int[] cardIds, int[] cells, PokerSquare square)
+        {
+            for (int k = 0; k < 25; k++)
+                if (cardIds[k] < 0 || cardIds[k] >= Card.BLANK_ID)
+                    throw new IllegalArgumentException("not a default card id: " + cardIds[k]);
+            long index = next.getAndIncrement();
+            ByteBuffer buffer = segment(index / SEGMENT_RECORDS);
+            int at = (int) (index % SEGMENT_RECORDS) * RECORD_BYTES;
+
+            buffer.putLong(at + SEED, seed);
+            for (int k = 0; k < 25; k++)
+            {
+                buffer.put(at + CARDS + k, (byte) cardIds[k]);
+                buffer.put(at + CELLS + k, (byte) cells[k]);
+            }
+            buffer.putShort(at + SCORE, (short) square.getScore());
+            for (int line = 0; line < 10; line += 2)
+                buffer.put(at + CATEGORIES + line / 2, (byte) (square.getLineCategory(line)
+                                                               | square.getLineCategory(line + 1) << 4));
+            buffer.put(at + DONE, (byte) 1);
+            return index;
+        }
+
+        /** @return the number of records handed out, including any still being written */
+        public long getCount() {return next.get();}
+
+        /** Finds the segment for a record, mapping it the first time it's needed */
+        private MappedByteBuffer segment(long s)
+        {
+            MappedByteBuffer[] mapped = segments;
+            if (s < mapped.length)
+                return mapped[(int) s];
+            synchronized (this)
+            {
+                mapped = segments;
+                if (s >= mapped.length)
+                {
+                    mapped = Arrays.copyOf(mapped, (int) s + 1);
+                    try
+                    {
+                        for (int i = segments.length; i <= s; i++)
+                        {
+                            mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                                    HEADER_BYTES + i * SEGMENT_BYTES, SEGMENT_BYTES);
+                            mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UncheckedIOException("can't grow the game log", e);
+                    }
+                    segments = mapped;
+                }
+                return mapped[(int) s];
+            }
+        }
+
+        /**
+         * Flushes the records to disk, cuts the unused end of the last
+         * segment off the file, and closes it.  Appends that have already
+         * started are waited for, and any that come later throw
+         * IllegalStateException, so nothing is ever written past the end of
+         * the cut file.
+         */
+        public void close() throws IOException
+        {
+            closed = true;
+            while (writing.get() > 0)
+                Thread.onSpinWait();
+            for (MappedByteBuffer buffer : segments)
+                buffer.force();
+            channel.truncate(HEADER_BYTES + next.get() * RECORD_BYTES);
+            channel.close();
+        }
+    }
+
+    /** Makes sure a file starts with a log header */
+    private static void checkHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != RECORD_BYTES)
+            throw new IOException("not a game log");
+    }
+
+    /**
+     * Reads the records of a log back, in order.
+     */
+    public static final class Reader implements Closeable
+    {
+        private final FileChannel channel;
+        private final MappedByteBuffer[] segments;
+        private final long count;
+
+        /**
+         * Opens a log for reading.
+         *
+         * @param path the log file
+         * @throws IOException if the file can't be opened or isn't a log
+         */
+        public Reader(Path path) throws IOException
+        {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            checkHeader(channel);
+            count = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+            segments = new MappedByteBuffer[(int) ((count + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS)];
+            for (int s = 0; s < segments.length; s++)
+            {
+                long start = HEADER_BYTES + s * SEGMENT_BYTES;
+                long length = Math.min(SEGMENT_BYTES, (count - (long) s * SEGMENT_RECORDS) * RECORD_BYTES);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+                segments[s].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        /** @return the number of records in the file, finished or not */
+        public long getCount() {return count;}
+
+        /**
+         * Points a record at one entry of the log.
+         *
+         * @param index the record's number
+         * @param record the record to point
+         * @return the record
+         */
+        public Record read(long index, Record record)
+        {
+            record.buffer = segments[(int) (index / SEGMENT_RECORDS)];
+            record.at = (int) (index % SEGMENT_RECORDS) * RECORD_BYTES;
+            record.index = index;
+            return record;
+        }
+
+        /**
+         * Passes every finished record to an action, in order.  The same Record
+         * object is reused for every call, so copy anything that has to be kept.
+         *
+         * @param action what to do with each record
+         */
+        public void forEach(Consumer<Record> action)
+        {
+            Record record = new Record();
+            for (long i = 0; i < count; i++)
+                if (read(i, record).isDone())
+                    action.accept(record);
+        }
+
+        public void close() throws IOException
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * One game in a log.  A record is a window onto the mapped file rather
+     * than a copy, so reading a field is a single load.
+     */
+    public static final class Record
+    {
+        private ByteBuffer buffer;
+        private int at;
+        private long index;
+
+        /** @return the record's number in the log */
+        public long getIndex() {return index;}
+
+        /** @return true if the writer finished the record */
+        public boolean isDone() {return buffer.get(at + DONE) == 1;}
+
+        public long getSeed() {return buffer.getLong(at + SEED);}
+
+        /** @return the k-th card dealt, from 0 to 24 */
+        public Card getCard(int k) {return Card.fromId(buffer.get(at + CARDS + k));}
+
+        /** @return the space the k-th card was put in */
+        public int getCell(int k) {return buffer.get(at + CELLS + k);}
+
+        public int getScore() {return buffer.getShort(at + SCORE);}
+
+        /** @return the category of a line, 0-4 for the rows and 5-9 for the columns */
+        public int getCategory(int line)
+        {
+            return buffer.get(at + CATEGORIES + line / 2) >>> 4 * (line & 1) & 0xF;
+        }
+
+        /**
+         * Plays the game back onto a square.
+         *
+         * @param square the square to play on.  It is cleared first.
+         * @return the score the replay ended with, which should match getScore
+         */
+        public int replay(PokerSquare square)
+        {
+            square.clear();
+            for (int k = 0; k < 25; k++)
+            {
+                int cell = getCell(k);
+                square.setCard(cell / 5, cell % 5, getCard(k));
+            }
+            return square.getScore();
+        }
+    }
+
+    /**
+     * Replays every game in a log, checks that each one ends with the recorded
+     * score, and prints the totals.
+     * <pre>java GameLog file</pre>
+     */
+    public static void main(String[] args) throws IOException
+    {
+        try (Reader reader = new Reader(Path.of(args[0])))
+        {
+            SimulationResult result = new SimulationResult();
+            PokerSquare square = new PokerSquare();
+            long[] mismatches = new long[1];
+            long start = System.nanoTime();
+            reader.forEach(record -> {
+                if (record.replay(square) != record.getScore())
+                    mismatches[0]++;
+                result.add(square);
+            });
+            result.setNanos(System.nanoTime() - start);
+            System.out.println(reader.getCount() + " records, " + mismatches[0] + " replays disagreed");
+            System.out.print(result);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hosts games of PokerSquare for many players at once over TCP.
+ * <p>
+ * Every connection is a session with its own square and deck, played on its
+ * own virtual thread (so this needs Java 21).  A session waiting for its
+ * player's next move is just a parked virtual thread, a square, a deck and
+ * two 128-byte buffers, so thousands of idle sessions cost very little.
+ * <p>
+ * The protocol is one line of ASCII each way.  A new connection starts a game
+ * straight away, and the server sends the first state line.  The player then
+ * sends any of:
+ * <pre>
+ * B3          put the card in hand at row B, column 3
+ * NEW [seed]  start over, with a random or a given shuffle
+ * QUIT        close the session</pre>
+ * and gets back one of:
+ * <pre>
+ * PLAY score board next   the game goes on, and next is the card to place
+ * OVER score board        the square is full
+ * ERR message             the command was no good; nothing changed</pre>
+ * A command with anything after it, such as <code>B3x</code>, or a line of
+ * more than 64 bytes, gets an ERR.
+ * The board is 50 characters, two per space in row-major order, with
+ * <code>..</code> for an empty space, for example
+ * <pre>PLAY 3 AH..7C........................................TD 9S</pre>
+ * Sessions that send nothing for the idle timeout are closed.  Finished games
+ * can be recorded in a {@link GameLog}.
+ * <p>
+ * From the command line:
+ * <pre>java GameServer [port] [idle timeout in seconds] [log file]</pre>
+ */
+public class GameServer implements AutoCloseable
+{
+    /** The port to use when none is given */
+    public static final int DEFAULT_PORT = 5225;
+
+    /** The longest command line the server reads */
+    private static final int MAX_LINE = 64;
+
+    /** What readLine returns for a line longer than MAX_LINE */
+    private static final int TOO_LONG = -2;
+
+    private final ServerSocket server;
+
+    /** How long a session may wait for a command, in milliseconds */
+    private final int idleTimeout;
+
+    /** Runs each session on its own virtual thread */
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+
+    /** Where finished games are recorded, or null */
+    private volatile GameLog.Writer log;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Opens the server socket.  Nothing is accepted until {@link #start}.
+     *
+     * @param port the port to listen on, or 0 for any free port
+     * @param idleTimeout how long a session may wait for a command, in milliseconds
+     * @throws IOException if the port can't be opened
+     */
+    public GameServer(int port, int idleTimeout) throws IOException
+    {
+        this.idleTimeout = idleTimeout;
+        server = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+    }
+
+    /** @return the port the server is listening on */
+    public int getPort() {return server.getLocalPort();}
+
+    /** @return the number of sessions connected right now */
+    public int getActiveSessions() {return active.get();}
+
+    /** @return the number of cards placed in all sessions so far */
+    public long getMoves() {return moves.sum();}
+
+    /**
+     * Records every game finished from now on.
+     *
+     * @param log where to write the games, or null to stop recording
+     */
+    public void setLog(GameLog.Writer log) {this.log = log;}
+
+    /** Starts accepting connections on a virtual thread of its own */
+    public void start()
+    {
+        Thread.ofVirtual().name("game-server").start(this::accept);
+    }
+
+    /** Hands each new connection to a session until the server is closed */
+    private void accept()
+    {
+        while (!server.isClosed())
+        {
+            try
+            {
+                Socket socket = server.accept();
+                sessions.execute(() -> play(socket));
+            }
+            catch (IOException e)
+            {
+                if (!server.isClosed())
+                    System.err.println("accept failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes every session, and waits a few
+     * seconds for the sessions to finish, so that the log can be closed after.
+     */
+    public void close() throws IOException
+    {
+        server.close();
+        sessions.shutdownNow();
+        try
+        {
+            if (!sessions.awaitTermination(5, TimeUnit.SECONDS))
+                System.err.println("some sessions didn't stop");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Runs one session until the player quits, goes idle or hangs up */
+    private void play(Socket socket)
+    {
+        active.incrementAndGet();
+        Session session = new Session();
+        try (socket)
+        {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(idleTimeout);
+            InputStream in = new BufferedInputStream(socket.getInputStream(), 128);
+            OutputStream out = socket.getOutputStream();
+            byte[] line = new byte[MAX_LINE];
+            byte[] reply = new byte[128];
+
+            session.newGame(ThreadLocalRandom.current().nextLong());
+            out.write(reply, 0, session.writeState(reply));
+            int n;
+            while ((n = readLine(in, line)) != -1)
+            {
+                int length;
+                if (n == TOO_LONG)
+                {
+                    out.write(error("line longer than " + MAX_LINE + " bytes"));
+                    continue;
+                }
+                if (n == 4 && startsWith(line, "QUIT"))
+                    break;
+                else if (n >= 3 && startsWith(line, "NEW") && (n == 3 || line[3] == ' '))
+                {
+                    long seed = ThreadLocalRandom.current().nextLong();
+                    if (n > 4)
+                    {
+                        try
+                        {
+                            seed = Long.parseLong(new String(line, 4, n - 4, StandardCharsets.US_ASCII).trim());
+                        }
+                        catch (NumberFormatException e)
+                        {
+                            out.write(error("bad seed"));
+                            continue;
+                        }
+                    }
+                    session.newGame(seed);
+                    length = session.writeState(reply);
+                }
+                else
+                {
+                    boolean timed = Metrics.ENABLED && session.placed == session.sampled;
+                    long start = timed ? System.nanoTime() : 0;
+                    String problem = session.place(line, n);
+                    if (problem != null)
+                    {
+                        out.write(error(problem));
+                        continue;
+                    }
+                    moves.increment();
+                    GameLog.Writer log = this.log;
+                    if (Metrics.ENABLED && session.isOver())
+                        Metrics.GAMES.increment();
+                    if (log != null && session.isOver())
+                    {
+                        try
+                        {
+                            log.append(session.seed, session.cardIds, session.cells, session.square);
+                        }
+                        catch (IllegalStateException e)
+                        {
+                            // the log was closed at shutdown, just before this game finished
+                        }
+                    }
+                    length = session.writeState(reply);
+                    if (timed)
+                        Metrics.SERVER_MOVE_NANOS.record(System.nanoTime() - start);
+                }
+                out.write(reply, 0, length);
+            }
+        }
+        catch (SocketTimeoutException | SocketException e)
+        {
+            // idle too long, or the player hung up
+        }
+        catch (IOException e)
+        {
+            System.err.println("session failed: " + e);
+        }
+        finally
+        {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads one line, without the line end.  A line longer than the buffer is
+     * read to its end and thrown away, rather than cut short and taken for a
+     * different command.
+     *
+     * @return the number of bytes read, TOO_LONG if the line didn't fit, or -1
+     *         at the end of the stream
+     */
+    private static int readLine(InputStream in, byte[] line) throws IOException
+    {
+        int n = 0, b;
+        boolean tooLong = false;
+        while ((b = in.read()) != '\n')
+        {
+            if (b < 0)
+                return tooLong ? TOO_LONG : n == 0 ? -1 : n;
+            if (b == '\r')
+                continue;
+            if (n < line.length)
+                line[n++] = (byte) b;
+            else
+                tooLong = true;
+        }
+        return tooLong ? TOO_LONG : n;
+    }
+
+    private static boolean startsWith(byte[] line, String word)
+    {
+        for (int i = 0; i < word.length(); i++)
+            if (Character.toUpperCase(line[i]) != word.charAt(i))
+                return false;
+        return true;
+    }
+
+    private static byte[] error(String problem)
+    {
+        return ("ERR " + problem + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * One player's game: as little as the server can keep per connection.
+     */
+    private static final class Session
+    {
+        private final PokerSquare square = new PokerSquare();
+        private final Deck deck = new Deck();
+        private Card next;
+
+        /** The game so far, for the log */
+        private long seed;
+        private final int[] cardIds = new int[25];
+        private final int[] cells = new int[25];
+        private int placed;
+
+        /** The move to time for Metrics, or -1 */
+        private int sampled = -1;
+
+        void newGame(long seed)
+        {
+            this.seed = seed;
+            placed = 0;
+            deck.reset();
+            deck.shuffle(seed);
+            square.clear();
+            next = deck.dealCard();
+            if (Metrics.ENABLED)
+                sampled = ThreadLocalRandom.current().nextInt(25);
+        }
+
+        /**
+         * Places the card in hand at a coordinate like B3.
+         *
+         * @return null if it worked, otherwise what was wrong
+         */
+        String place(byte[] line, int n)
+        {
+            if (next == null)
+                return "game over, send NEW";
+            if (n != 2)
+                return "expected a coordinate like B3";
+            int i = Character.toUpperCase(line[0]) - 'A';
+            int j = line[1] - '1';
+            if (i < 0 || i >= 5 || j < 0 || j >= 5)
+                return "expected a coordinate like B3";
+            if (!square.isEmpty(i, j))
+                return "space taken";
+            square.setCard(i, j, next);
+            cardIds[placed] = next.getId();
+            cells[placed++] = i * 5 + j;
+            next = deck.getSize() > 0 && hasEmpty() ? deck.dealCard() : null;
+            return null;
+        }
+
+        /** @return true once all 25 cards are placed */
+        boolean isOver()
+        {
+            return placed == 25;
+        }
+
+        private boolean hasEmpty()
+        {
+            for (int cell = 0; cell < 25; cell++)
+                if (square.isEmpty(cell / 5, cell % 5))
+                    return true;
+            return false;
+        }
+
+        /**
+         * Writes the PLAY or OVER line into a buffer.
+         *
+         * @return the number of bytes written
+         */
+        int writeState(byte[] reply)
+        {
+            int p = put(reply, 0, next != null ? "PLAY " : "OVER ");
+            p = put(reply, p, Integer.toString(square.getScore()));
+            reply[p++] = ' ';
+            for (int cell = 0; cell < 25; cell++)
+            {
+                Card card = square.getCard(cell / 5, cell % 5);
+                p = card.getValue() == 0 ? put(reply, p, "..") : put(reply, p, card.getShortString());
+            }
+            if (next != null)
+            {
+                reply[p++] = ' ';
+                p = put(reply, p, next.getShortString());
+            }
+            reply[p++] = '\n';
+            return p;
+        }
+
+        private static int put(byte[] reply, int p, String s)
+        {
+            for (int i = 0; i < s.length(); i++)
+                reply[p++] = (byte) s.charAt(i);
+            return p;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int idle = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        GameServer server = new GameServer(port, idle * 1000);
+        if (args.length > 2)
+        {
+            GameLog.Writer log = new GameLog.Writer(Path.of(args[2]));
+            server.setLog(log);
+            // sessions first, so no append is still writing when the log is cut to length
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try
+                {
+                    server.close();
+                    log.close();
+                }
+                catch (IOException e)
+                {
+                    System.err.println("couldn't close the log: " + e);
+                }
+            }));
+        }
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+        while (true)
+        {
+            Thread.sleep(10000);
+            System.out.println("Sessions: " + server.getActiveSessions() + "  moves: " + server.getMoves());
+        }
+    }
+}
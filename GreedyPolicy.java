@@ -0,0 +1,27 @@
+/**
+ * A placement policy that puts each card wherever it raises the score the most
+ * right now.  Ties go to the first such space in row-major order.
+ */
+public class GreedyPolicy implements PlacementPolicy
+{
+    public int chooseCell(PokerSquare square, Card next, Deck remaining)
+    {
+        int best = -1;
+        int bestScore = -1;
+        for (int cell = 0; cell < 25; cell++)
+        {
+            int i = cell / 5, j = cell % 5;
+            if (!square.isEmpty(i, j))
+                continue;
+            square.place(cell, next);
+            int score = square.getScore();
+            square.undo();
+            if (score > bestScore)
+            {
+                bestScore = score;
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * An allocation-free poker hand evaluator that works on int-encoded cards.
+ * <p>
+ * Each card is packed into a single int.  The low four bits hold the card's
+ * value (2-14 in a default deck), and bits 4-7 hold a one-hot suit bit.
+ * A blank card (value 0) is encoded as 0, so it has no rank and no suit.
+ * <p>
+ * Sample encodings:
+ * <pre>
+ * Ace of Hearts   = 0x1E  (suit bit 0x10, value 14)
+ * Two of Clubs    = 0x82  (suit bit 0x80, value 2)
+ * Blank           = 0x00</pre>
+ * <p>
+ * The evaluator gives exactly the same answers as the <code>isXxx</code> chain
+ * in PokerHand, but it gets there in one pass over the five cards without
+ * building any lists.  The category and the English score are returned together
+ * in one int, see {@link #getCategory} and {@link #getScore}.
+ */
+public final class HandEvaluator
+{
+    /** Card encoding for a blank card or an empty space. */
+    public static final int BLANK = 0;
+
+    /** Mask for the value bits of an encoded card. */
+    public static final int VALUE_MASK = 0x0F;
+
+    /** Mask for the suit bits of an encoded card. */
+    public static final int SUIT_MASK = 0xF0;
+
+    /** The names of the hands, from High Card to Straight Flush */
+    static final String[] HAND_RANKS = {"High Card", "One Pair", "Two Pair", "Three of a Kind",
+        "Straight", "Flush", "Full House", "Four of a Kind", "Straight Flush"};
+
+    /** The scores of the hands under the English Poker Solitaire system */
+    static final int[] HAND_VALUES = {0, 1, 3, 6, 12, 5, 10, 16, 30};
+
+    /**
+     * Category by number of matching pairs of cards.  See PokerHand.getNumMatches
+     * for why 1 match is One Pair, 4 is a Full House, and 6 is Four of a Kind.
+     */
+    private static final int[] MATCH_CATEGORY = {0, 1, 2, 3, 6, 0, 7, 0, 0, 0, 0};
+
+    /** Category and score packed together, indexed by category. */
+    private static final int[] PACKED = new int[HAND_VALUES.length];
+
+    static
+    {
+        for (int i = 0; i < PACKED.length; i++)
+            PACKED[i] = HAND_VALUES[i] << 4 | i;
+    }
+
+    private HandEvaluator() {}
+
+    /**
+     * Encodes a card value and suit index into the int form used by the evaluator.
+     *
+     * @param value the card's value, from 0 to 15.  A value of 0 is a blank.
+     * @param suit the suit index, from 0 to 3
+     * @return the encoded card
+     */
+    public static int encode(int value, int suit)
+    {
+        return value == 0 ? BLANK : (0x10 << suit) | value;
+    }
+
+    /**
+     * Evaluates five encoded cards.
+     * <p>
+     * Pairs are counted the same way PokerHand.getNumMatches counts them, except
+     * that each rank keeps a running 4-bit count inside one long.  Every new card
+     * matches all the cards of its rank seen before it.  Blanks are parked in
+     * count slot 0, which is never incremented, so they never match.
+     * <p>
+     * A straight is five distinct values in a row, which shows up as five
+     * consecutive bits in the value mask.  A flush is a suit bit shared by all
+     * five cards, which a blank can never have.
+     *
+     * @return the category in the low four bits and the score above them
+     * @see #getCategory
+     * @see #getScore
+     */
+    public static int evaluate(int c0, int c1, int c2, int c3, int c4)
+    {
+        int v0 = c0 & VALUE_MASK, v1 = c1 & VALUE_MASK, v2 = c2 & VALUE_MASK,
+            v3 = c3 & VALUE_MASK, v4 = c4 & VALUE_MASK;
+
+        long counts = 0;
+        int matches = 0;
+        matches += (int) (counts >>> (v0 << 2)) & 0xF; counts += (1L << (v0 << 2)) & ~0xFL;
+        matches += (int) (counts >>> (v1 << 2)) & 0xF; counts += (1L << (v1 << 2)) & ~0xFL;
+        matches += (int) (counts >>> (v2 << 2)) & 0xF; counts += (1L << (v2 << 2)) & ~0xFL;
+        matches += (int) (counts >>> (v3 << 2)) & 0xF; counts += (1L << (v3 << 2)) & ~0xFL;
+        matches += (int) (counts >>> (v4 << 2)) & 0xF;
+
+        int values = (1 << v0) | (1 << v1) | (1 << v2) | (1 << v3) | (1 << v4);
+        int straight = (values >>> Integer.numberOfTrailingZeros(values)) == 0x1F ? 4 : 0;
+        int flush = (c0 & c1 & c2 & c3 & c4 & SUIT_MASK) != 0 ? 5 : 0;
+
+        return classify(matches, straight, flush);
+    }
+
+    /**
+     * Combines the three things that decide a hand's category.
+     *
+     * @param matches the number of matching pairs of cards, from 0 to 10
+     * @param straight 4 if the hand is a straight, 0 otherwise
+     * @param flush 5 if the hand is a flush, 0 otherwise
+     * @return the packed result, as described in {@link #evaluate}
+     */
+    static int classify(int matches, int straight, int flush)
+    {
+        int category = Math.max(MATCH_CATEGORY[matches], straight | flush);
+        if (straight + flush == 9)
+            category = 8;
+        return PACKED[category];
+    }
+
+    /**
+     * Packs a category with its score, the same way {@link #evaluate} does.
+     *
+     * @param category a number from 0-8
+     * @return the packed result
+     */
+    static int result(int category)
+    {
+        return PACKED[category];
+    }
+
+    /**
+     * @param result a result from {@link #evaluate}
+     * @return a number from 0-8 indicating the relative strength of the hand
+     */
+    public static int getCategory(int result)
+    {
+        return result & 0xF;
+    }
+
+    /**
+     * @param result a result from {@link #evaluate}
+     * @return a number from 0-30 indicating the solitaire value of the hand
+     */
+    public static int getScore(int result)
+    {
+        return result >>> 4;
+    }
+}
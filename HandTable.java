@@ -0,0 +1,262 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A precomputed table holding the category of every hand that can be made from
+ * a default deck, including hands with one or more blank cards.
+ * <p>
+ * A hand is turned into an index with the combinatorial number system.  The real
+ * cards in the hand get ids from 0 to 51, the ids are sorted, and a hand of
+ * <i>k</i> real cards with ids <i>a &lt; b &lt; ...</i> lands at
+ * <pre>OFFSET[k] + C(a,1) + C(b,2) + ...</pre>
+ * where OFFSET[k] is the number of hands with fewer than <i>k</i> real cards.
+ * Every hand gets its own slot, and there are no holes, so the whole table is
+ * just under 2.9 million bytes.
+ * <p>
+ * The table is written to a file once and then memory-mapped read-only, so
+ * several JVMs on the same machine share the same pages and none of them pays
+ * to build it again.  Set the system property <code>pokersquares.handtable</code>
+ * to a file name to make PokerHand use the table.
+ */
+public final class HandTable
+{
+    /** Marks the start of a table file: "PSHT" */
+    private static final int MAGIC = 0x50534854;
+
+    /** Bytes before the first entry: the magic number and the entry count */
+    private static final int HEADER = 8;
+
+    /** Real cards in a default deck */
+    private static final int CARDS = 52;
+
+    /** C(n, k) for n up to 52 and k up to 5, stored as BINOM[k][n] */
+    private static final int[][] BINOM = new int[6][CARDS + 1];
+
+    /** OFFSET[k] is the number of hands with fewer than k real cards */
+    private static final int[] OFFSET = new int[7];
+
+    static
+    {
+        for (int n = 0; n <= CARDS; n++)
+        {
+            BINOM[0][n] = 1;
+            for (int k = 1; k <= 5 && k <= n; k++)
+                BINOM[k][n] = BINOM[k - 1][n - 1] + (k <= n - 1 ? BINOM[k][n - 1] : 0);
+        }
+        for (int k = 1; k <= 6; k++)
+            OFFSET[k] = OFFSET[k - 1] + BINOM[k - 1][CARDS];
+    }
+
+    /** The number of entries in a table */
+    static final int SIZE = OFFSET[6];
+
+    /** Holds the table named by the system property, loaded on first use */
+    private static final class Default
+    {
+        static final HandTable TABLE = loadDefault();
+    }
+
+    /** The entries, one category per hand */
+    private final ByteBuffer entries;
+
+    private HandTable(ByteBuffer entries)
+    {
+        this.entries = entries;
+    }
+
+    /**
+     * Provides the table named by the <code>pokersquares.handtable</code> property.
+     * If the file can't be read or written, the problem is reported once and
+     * callers carry on with HandEvaluator.
+     *
+     * @return the default table, or null if none is configured or it couldn't be loaded.
+     */
+    public static HandTable getDefault()
+    {
+        return Default.TABLE;
+    }
+
+    private static HandTable loadDefault()
+    {
+        String file = System.getProperty("pokersquares.handtable");
+        if (file == null || file.isEmpty())
+            return null;
+        try
+        {
+            return load(Paths.get(file));
+        }
+        catch (IOException e)
+        {
+            System.err.println("Could not load hand table " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Memory-maps a table file, building and writing it first if it doesn't exist
+     * or isn't a valid table.
+     * <p>
+     * The file is written to a temporary name and then moved into place, so a
+     * JVM that starts while another is still writing never maps half a table.
+     *
+     * @param file where the table lives
+     * @return the mapped table
+     * @throws IOException if the file can't be written or mapped
+     */
+    public static HandTable load(Path file) throws IOException
+    {
+        HandTable table = map(file);
+        if (table != null)
+            return table;
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try
+        {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER + SIZE);
+            buf.putInt(MAGIC).putInt(SIZE).put(build()).flip();
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE))
+            {
+                while (buf.hasRemaining())
+                    ch.write(buf);
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+
+        table = map(file);
+        if (table == null)
+            throw new IOException("hand table " + file + " is not valid after writing it");
+        return table;
+    }
+
+    /**
+     * Maps an existing table file.
+     *
+     * @return the table, or null if the file is missing or not a valid table
+     */
+    private static HandTable map(Path file) throws IOException
+    {
+        if (!Files.isRegularFile(file) || Files.size(file) != HEADER + SIZE)
+            return null;
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, HEADER + SIZE);
+            if (map.getInt(0) != MAGIC || map.getInt(4) != SIZE)
+                return null;
+            return new HandTable(map.slice(HEADER, SIZE));
+        }
+    }
+
+    /**
+     * Builds the entries by running every hand through HandEvaluator.
+     *
+     * @return one category per hand, in index order
+     */
+    static byte[] build()
+    {
+        byte[] table = new byte[SIZE];
+        int[] codes = new int[5];
+        for (int k = 0; k <= 5; k++)
+            fill(table, codes, 0, k, 0);
+        return table;
+    }
+
+    /** Chooses the remaining real cards of a k-card hand, in increasing id order */
+    private static void fill(byte[] table, int[] codes, int pos, int k, int first)
+    {
+        if (pos == k)
+        {
+            for (int i = k; i < 5; i++)
+                codes[i] = HandEvaluator.BLANK;
+            int result = HandEvaluator.evaluate(codes[0], codes[1], codes[2], codes[3], codes[4]);
+            table[index(codes[0], codes[1], codes[2], codes[3], codes[4])] =
+                (byte) HandEvaluator.getCategory(result);
+            return;
+        }
+        for (int id = first; id < CARDS; id++)
+        {
+            codes[pos] = HandEvaluator.encode(id / 4 + 2, id % 4);
+            fill(table, codes, pos + 1, k, id + 1);
+        }
+    }
+
+    /**
+     * Evaluates five encoded cards with one load from the table.  Hands the table
+     * doesn't cover, such as ones holding the same card twice, are passed on to
+     * HandEvaluator.
+     *
+     * @return the category and score, packed as in HandEvaluator.evaluate
+     */
+    public int evaluate(int c0, int c1, int c2, int c3, int c4)
+    {
+        int i = index(c0, c1, c2, c3, c4);
+        if (i < 0)
+            return HandEvaluator.evaluate(c0, c1, c2, c3, c4);
+        return HandEvaluator.result(entries.get(i));
+    }
+
+    /**
+     * Turns a card code into a table id: the value from 2 to 14 picks a group of four,
+     * and the suit picks the card in the group.  Blanks get 52, so they sort last.
+     * Anything else gets a negative id.
+     */
+    private static int id(int code)
+    {
+        if (code == HandEvaluator.BLANK)
+            return CARDS;
+        int v = code & HandEvaluator.VALUE_MASK, s = code >>> 4;
+        if (v < 2 || v > 14 || Integer.bitCount(s) != 1)
+            return -1;
+        return (v - 2) * 4 + Integer.numberOfTrailingZeros(s);
+    }
+
+    /**
+     * Finds a hand's slot in the table.
+     *
+     * @return the index, or -1 if the hand isn't in the table
+     */
+    static int index(int c0, int c1, int c2, int c3, int c4)
+    {
+        int a = id(c0), b = id(c1), c = id(c2), d = id(c3), e = id(c4), t;
+        if ((a | b | c | d | e) < 0)
+            return -1;
+
+        // a sorting network for five ids
+        if (a > b) { t = a; a = b; b = t; }
+        if (d > e) { t = d; d = e; e = t; }
+        if (c > e) { t = c; c = e; e = t; }
+        if (c > d) { t = c; c = d; d = t; }
+        if (a > d) { t = a; a = d; d = t; }
+        if (a > c) { t = a; a = c; c = t; }
+        if (b > e) { t = b; b = e; e = t; }
+        if (b > d) { t = b; b = d; d = t; }
+        if (b > c) { t = b; b = c; c = t; }
+
+        // the same card twice can't be indexed
+        if ((a == b && a != CARDS) || (b == c && b != CARDS) || (c == d && c != CARDS)
+            || (d == e && d != CARDS))
+            return -1;
+
+        int k = (a < CARDS ? 1 : 0) + (b < CARDS ? 1 : 0) + (c < CARDS ? 1 : 0)
+            + (d < CARDS ? 1 : 0) + (e < CARDS ? 1 : 0);
+        int i = OFFSET[k];
+        if (k > 0) i += a;
+        if (k > 1) i += BINOM[2][b];
+        if (k > 2) i += BINOM[3][c];
+        if (k > 3) i += BINOM[4][d];
+        if (k > 4) i += BINOM[5][e];
+        return i;
+    }
+}
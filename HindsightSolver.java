@@ -0,0 +1,858 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the best score that could have been made from the 25 cards of a game,
+ * had they all been known before the first one was placed.
+ * <p>
+ * No policy can beat the true hindsight score, so it is the yardstick the
+ * policies are measured against.  There are 25! arrangements, so the solver
+ * doesn't look at them one by one.  Instead it looks at what each line is
+ * worth.  A line that scores holds a <i>core</i>: the fewest of its cards that
+ * make its hand, such as the two cards of a Pair, the four of a Two Pair, or
+ * all five of a Straight.  More cards never take a hand down a category, so a
+ * line is worth at least its core wherever the other cards go.  Every
+ * arrangement has a core in each row that scores, the row cores share no
+ * cards, nor do the column cores, and a row core and a column core share at
+ * most one card, the one where they cross.  So the solver works in three steps:
+ * <ol>
+ * <li>A few runs of simulated annealing, one fork/join task each, find a good
+ *     arrangement quickly.  Its score is what the search has to beat.</li>
+ * <li>A depth-first branch-and-bound picks up to five row cores, highest value
+ *     first, and for each set of them, up to five column cores that cross each
+ *     row core at most once.  Turning an arrangement on its side doesn't
+ *     change its score, so the rows only need to be worth at least as much as
+ *     the columns.  Lines are bounded by the most that that many lines that
+ *     share no cards could be worth from the cores left, which is worked out
+ *     once for each set of cards used and kept.</li>
+ * <li>Row and column cores that beat the best score so far are put in place,
+ *     each row core in a row of its own and each column core in a column of
+ *     its own, with the other cards wherever there is room.  That is a
+ *     matching of cards to spaces.  If it can be done, the arrangement is
+ *     worth at least what its cores are, and it becomes the best so far.</li>
+ * </ol>
+ * The search is split into fork/join tasks, one per first row core, which
+ * share the best score through an AtomicInteger, so a better arrangement found
+ * by one task cuts branches in all the others.
+ * <p>
+ * The answer is exact if the search finishes, which on one core takes a
+ * second or two for a typical deal and several seconds for the odd hard one.
+ * A solve can be given a time limit.  If it runs out, the answer is the best
+ * arrangement found, {@link Solution#isOptimal} is false, and the score is only
+ * a lower bound on the hindsight score.  The search notes the bound of every
+ * node it had to leave, so {@link Solution#getUpperBound} gives a proven upper
+ * bound to go with it, and the true hindsight score lies between the two.
+ * <p>
+ * From the command line:
+ * <pre>java HindsightSolver log-file [seconds per deal] [games]</pre>
+ * solves the deal of every game in a GameLog and compares the score each game
+ * actually made with its hindsight score.  With a number in place of the file,
+ * it solves that many seeded deals instead, starting from a random seed:
+ * <pre>java HindsightSolver deals [seconds per deal] [firstSeed]</pre>
+ * The time limit defaults to 10 seconds a deal; 0 means no limit.  A deal that
+ * isn't proven in time is reported as a range, and the percentages of the
+ * hindsight score are worked out against both ends of it.
+ */
+public class HindsightSolver
+{
+    /** How many swaps each annealing run tries */
+    private static final int ANNEAL_STEPS = 200_000;
+
+    /** The annealing temperatures at the start and at the end of a run */
+    private static final double HOT = 10, COLD = 0.2;
+
+    /** How many nodes go by between looks at the clock */
+    private static final int CLOCK_NODES = 1 << 10;
+
+    private final ForkJoinPool pool;
+
+    /** The time limit per solve in nanoseconds, or 0 for none */
+    private long timeLimit;
+
+    /**
+     * Creates a solver that runs in the common fork/join pool.
+     */
+    public HindsightSolver()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a solver that runs in a given pool.
+     *
+     * @param pool the pool to use
+     */
+    public HindsightSolver(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Limits how long each solve may take.  A solve that runs out of time
+     * returns the best arrangement it found.  Finding the cores and the
+     * annealing always run to the end, so a solve takes a few tenths of a
+     * second however short the limit.
+     *
+     * @param millis the limit in milliseconds, or 0 for none
+     */
+    public void setTimeLimit(long millis)
+    {
+        timeLimit = millis * 1_000_000;
+    }
+
+    /**
+     * Finds the best arrangement of 25 cards.
+     *
+     * @param dealt the cards, in any order
+     * @return the best arrangement
+     * @throws IllegalArgumentException if there aren't 25 different cards from
+     *         the default deck
+     */
+    public Solution solve(Card[] dealt)
+    {
+        if (dealt.length != 25)
+            throw new IllegalArgumentException("a deal has 25 cards, not " + dealt.length);
+        long start = System.nanoTime();
+        Problem problem = new Problem(dealt, timeLimit == 0 ? Long.MAX_VALUE : start + timeLimit);
+
+        // the same deal always anneals the same way
+        long seed = Arrays.hashCode(problem.ids);
+        int runs = Math.max(2, pool.getParallelism());
+        pool.invoke(new RecursiveAction() {
+            protected void compute()
+            {
+                List<RecursiveAction> anneals = new ArrayList<>();
+                for (int run = 0; run < runs; run++)
+                {
+                    SplittableRandom random = new SplittableRandom(seed + run);
+                    anneals.add(new RecursiveAction() {
+                        protected void compute()
+                        {
+                            int[] arrangement = anneal(problem, random);
+                            problem.offer(arrangement, score(problem, arrangement));
+                        }
+                    });
+                }
+                invokeAll(anneals);
+            }
+        });
+
+        pool.invoke(new Search(problem));
+
+        Card[] cards = new Card[25];
+        for (int cell = 0; cell < 25; cell++)
+            cards[cell] = problem.cards[problem.bestArrangement[cell]];
+        return new Solution(cards, problem.best.get(), problem.getUpperBound(), problem.nodes.get(),
+                            System.nanoTime() - start);
+    }
+
+    /**
+     * Finds the best arrangement of the 25 cards of a logged game.
+     *
+     * @param record the game
+     * @return the best arrangement
+     */
+    public Solution solve(GameLog.Record record)
+    {
+        Card[] dealt = new Card[25];
+        for (int k = 0; k < 25; k++)
+            dealt[k] = record.getCard(k);
+        return solve(dealt);
+    }
+
+    /**
+     * Simulated annealing from a random arrangement: swaps two random cards,
+     * keeps the swap if it doesn't lower the score, and otherwise keeps it with
+     * a chance that shrinks with the loss and with the temperature, which cools
+     * from {@link #HOT} to {@link #COLD} over the run.
+     *
+     * @return the best arrangement found, as the card index in each space
+     */
+    private static int[] anneal(Problem problem, SplittableRandom random)
+    {
+        int[] current = new int[25];
+        for (int cell = 0; cell < 25; cell++)
+        {
+            int other = random.nextInt(cell + 1);
+            current[cell] = current[other];
+            current[other] = cell;
+        }
+        int[] lines = new int[10];
+        int score = 0;
+        for (int line = 0; line < 10; line++)
+            score += lines[line] = lineScore(problem, current, line);
+        int[] best = current.clone();
+        int bestScore = score;
+
+        for (int step = 0; step < ANNEAL_STEPS; step++)
+        {
+            int a = random.nextInt(25), b = random.nextInt(25);
+            if (a == b)
+                continue;
+            int ra = a / 5, ca = 5 + a % 5, rb = b / 5, cb = 5 + b % 5;
+            int t = current[a];
+            current[a] = current[b];
+            current[b] = t;
+            int newRa = lineScore(problem, current, ra), newCa = lineScore(problem, current, ca);
+            int newRb = rb != ra ? lineScore(problem, current, rb) : 0;
+            int newCb = cb != ca ? lineScore(problem, current, cb) : 0;
+            int change = newRa + newCa + newRb + newCb - lines[ra] - lines[ca]
+                       - (rb != ra ? lines[rb] : 0) - (cb != ca ? lines[cb] : 0);
+            double temperature = HOT * Math.pow(COLD / HOT, (double) step / ANNEAL_STEPS);
+            if (change >= 0 || random.nextDouble() < Math.exp(change / temperature))
+            {
+                lines[ra] = newRa;
+                lines[ca] = newCa;
+                if (rb != ra)
+                    lines[rb] = newRb;
+                if (cb != ca)
+                    lines[cb] = newCb;
+                score += change;
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    System.arraycopy(current, 0, best, 0, 25);
+                }
+            }
+            else
+            {
+                current[b] = current[a];
+                current[a] = t;
+            }
+        }
+        return best;
+    }
+
+    /** @return the value of one line of a full arrangement, 0-4 for rows and 5-9 for columns */
+    private static int lineScore(Problem problem, int[] arrangement, int line)
+    {
+        int first = line < 5 ? line * 5 : line - 5, step = line < 5 ? 1 : 5;
+        int[] codes = problem.codes;
+        return HandEvaluator.getScore(HandEvaluator.evaluate(codes[arrangement[first]],
+                                                             codes[arrangement[first + step]],
+                                                             codes[arrangement[first + 2 * step]],
+                                                             codes[arrangement[first + 3 * step]],
+                                                             codes[arrangement[first + 4 * step]]));
+    }
+
+    private static int score(Problem problem, int[] arrangement)
+    {
+        int score = 0;
+        for (int line = 0; line < 10; line++)
+            score += lineScore(problem, arrangement, line);
+        return score;
+    }
+
+    /**
+     * One deal being solved, shared by all of its tasks.  The cards are sorted
+     * by id, and everything else refers to them by their index in that order.
+     */
+    private static final class Problem
+    {
+        final Card[] cards = new Card[25];
+        final int[] values = new int[25];
+        final int[] suits = new int[25];
+        final int[] ids = new int[25];
+        final int[] codes = new int[25];
+
+        final long deadline;
+
+        final AtomicInteger best = new AtomicInteger(-1);
+        int[] bestArrangement;
+
+        /** Every core in the deal, as a bit per card, highest value first, and their values */
+        final int[] coreCards, coreValues;
+
+        /** For each card, the cores whose lowest card it is */
+        final int[][] coresFrom;
+
+        /** The most any five lines that share no cards can be worth */
+        final int packing;
+
+        /** The answers of {@link #pack} so far */
+        private final ConcurrentHashMap<Long, Integer> packs = new ConcurrentHashMap<>();
+
+        /** The highest bound of any node the search had to leave unexplored, or -1 */
+        final AtomicInteger open = new AtomicInteger(-1);
+
+        final AtomicLong nodes = new AtomicLong();
+        volatile boolean timedOut;
+
+        Problem(Card[] dealt, long deadline)
+        {
+            this.deadline = deadline;
+            long seen = 0;
+            for (Card card : dealt)
+            {
+                int id = card.getId();
+                if (id < 0 || id >= Card.BLANK_ID)
+                    throw new IllegalArgumentException(card + " isn't a card from the default deck");
+                if ((seen & 1L << id) != 0)
+                    throw new IllegalArgumentException(card + " was dealt twice");
+                seen |= 1L << id;
+            }
+            int[] byValue = new int[16], bySuit = new int[4];
+            for (int k = 0; seen != 0; k++, seen &= seen - 1)
+            {
+                int id = Long.numberOfTrailingZeros(seen);
+                cards[k] = Card.fromId(id);
+                ids[k] = id;
+                values[k] = id / 4 + 2;
+                suits[k] = id % 4;
+                codes[k] = cards[k].getCode();
+                byValue[values[k]] |= 1 << k;
+                bySuit[suits[k]] |= 1 << k;
+            }
+
+            // every core in the deal, with its value: the cards of one value, then runs, then suits
+            List<int[]> cores = new ArrayList<>();
+            for (int v = 2; v <= 14; v++)
+            {
+                for (int pair : subsets(byValue[v], 2))
+                {
+                    cores.add(new int[] {pair, HandEvaluator.HAND_VALUES[1]});
+                    for (int w = v + 1; w <= 14; w++)
+                        for (int other : subsets(byValue[w], 2))
+                            cores.add(new int[] {pair | other, HandEvaluator.HAND_VALUES[2]});
+                }
+                for (int three : subsets(byValue[v], 3))
+                {
+                    cores.add(new int[] {three, HandEvaluator.HAND_VALUES[3]});
+                    for (int w = 2; w <= 14; w++)
+                        if (w != v)
+                            for (int pair : subsets(byValue[w], 2))
+                                cores.add(new int[] {three | pair, HandEvaluator.HAND_VALUES[6]});
+                }
+                if (Integer.bitCount(byValue[v]) == 4)
+                    cores.add(new int[] {byValue[v], HandEvaluator.HAND_VALUES[7]});
+            }
+            for (int low = 2; low <= 10; low++)
+            {
+                List<Integer> runs = List.of(0);
+                for (int v = low; v < low + 5; v++)
+                {
+                    List<Integer> longer = new ArrayList<>();
+                    for (int run : runs)
+                        for (int rest = byValue[v]; rest != 0; rest &= rest - 1)
+                            longer.add(run | rest & -rest);
+                    runs = longer;
+                }
+                for (int run : runs)
+                {
+                    boolean flush = false;
+                    for (int s = 0; s < 4; s++)
+                        flush |= (run & ~bySuit[s]) == 0;
+                    cores.add(new int[] {run, HandEvaluator.HAND_VALUES[flush ? 8 : 4]});
+                }
+            }
+            for (int s = 0; s < 4; s++)
+                for (int five : subsets(bySuit[s], 5))
+                {
+                    int bits = 0;
+                    for (int rest = five; rest != 0; rest &= rest - 1)
+                        bits |= 1 << values[Integer.numberOfTrailingZeros(rest)];
+                    // five in a row of one suit are already in as a Straight Flush
+                    if (bits >>> Integer.numberOfTrailingZeros(bits) != 0x1F)
+                        cores.add(new int[] {five, HandEvaluator.HAND_VALUES[5]});
+                }
+            cores.sort((a, b) -> b[1] - a[1]);
+
+            coreCards = new int[cores.size()];
+            coreValues = new int[cores.size()];
+            int[] from = new int[25];
+            for (int c = 0; c < coreCards.length; c++)
+            {
+                coreCards[c] = cores.get(c)[0];
+                coreValues[c] = cores.get(c)[1];
+                from[Integer.numberOfTrailingZeros(coreCards[c])]++;
+            }
+            coresFrom = new int[25][];
+            for (int k = 0; k < 25; k++)
+                coresFrom[k] = new int[from[k]];
+            Arrays.fill(from, 0);
+            for (int c = 0; c < coreCards.length; c++)
+            {
+                int k = Integer.numberOfTrailingZeros(coreCards[c]);
+                coresFrom[k][from[k]++] = c;
+            }
+            packing = pack(0, 5);
+        }
+
+        /** @return every subset of a set of cards with a given number of cards, as a bit per card */
+        private static List<Integer> subsets(int set, int size)
+        {
+            List<Integer> subsets = new ArrayList<>();
+            if (size == 0)
+                subsets.add(0);
+            else
+                for (int rest = set; Integer.bitCount(rest) >= size; rest &= rest - 1)
+                    for (int subset : subsets(rest & rest - 1, size - 1))
+                        subsets.add(subset | rest & -rest);
+            return subsets;
+        }
+
+        /**
+         * Finds the most that a number of lines that share no cards can be
+         * worth, counting only the cores they hold, from the cards not yet
+         * used.  The lowest card left is either in none of the cores, or in
+         * exactly one, whose lowest card it is, and the answers are kept.
+         *
+         * @param used a bit for each card that can't be used
+         * @param lines how many lines there are
+         */
+        int pack(int used, int lines)
+        {
+            int left = ~used & (1 << 25) - 1;
+            if (lines == 0 || left == 0)
+                return 0;
+            Long key = (long) used << 3 | lines;
+            Integer known = packs.get(key);
+            if (known != null)
+                return known;
+            int low = Integer.numberOfTrailingZeros(left);
+            int most = pack(used | 1 << low, lines);
+            for (int c : coresFrom[low])
+                if ((coreCards[c] & used) == 0)
+                    most = Math.max(most, coreValues[c] + pack(used | coreCards[c], lines - 1));
+            packs.put(key, most);
+            return most;
+        }
+
+        /** Notes the bound of a node the search ran out of time before finishing */
+        void leaveOpen(int bound)
+        {
+            open.accumulateAndGet(bound, Math::max);
+        }
+
+        /** @return a score no arrangement can beat */
+        int getUpperBound()
+        {
+            return Math.max(best.get(), open.get());
+        }
+
+        /** Keeps an arrangement if it beats the best so far */
+        synchronized void offer(int[] arrangement, int score)
+        {
+            if (score > best.get())
+            {
+                bestArrangement = arrangement.clone();
+                best.set(score);
+            }
+        }
+    }
+
+    /**
+     * The search over cores, for every set of row cores that starts with one
+     * given core.  A task keeps its own scratch space, and adds its node count
+     * to the problem's when it finishes.
+     */
+    private static final class Search extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        /** The spaces of row A, and of column 1, as bits */
+        private static final int ROW = 0x1F, COLUMN = 0x108421;
+
+        private final transient Problem problem;
+
+        /** The first row core, or -1 for the task that forks the others */
+        private final int first;
+
+        /** The row cores and the column cores chosen so far */
+        private final int[] rowCores = new int[5], columnCores = new int[5];
+
+        /**
+         * By the number of row cores chosen, the cores that share at most one
+         * card with each of them, the only ones that can be column cores
+         */
+        private final int[][] columnChoices = new int[6][];
+        private final int[] columnChoiceCounts = new int[6];
+
+        /** Scratch space for complete: the spaces each card may go in, and the card in each space */
+        private final int[] allowed = new int[25], holder = new int[25];
+        private int visited;
+
+        private long nodes;
+
+        Search(Problem problem)
+        {
+            this(problem, -1);
+        }
+
+        private Search(Problem problem, int first)
+        {
+            this.problem = problem;
+            this.first = first;
+        }
+
+        protected void compute()
+        {
+            Problem problem = this.problem;
+            if (first < 0)
+            {
+                List<Search> tasks = new ArrayList<>();
+                for (int c = 0; c < problem.coreCards.length; c++)
+                    if (rowBound(1, problem.coreCards[c], problem.coreValues[c]) > problem.best.get())
+                        tasks.add(new Search(problem, c));
+                invokeAll(tasks);
+                return;
+            }
+            int cards = problem.coreCards[first], value = problem.coreValues[first];
+            int bound = rowBound(1, cards, value);
+            if (bound <= problem.best.get())
+                return;
+            if (problem.timedOut)
+            {
+                problem.leaveOpen(bound);
+                return;
+            }
+            int[] all = new int[problem.coreCards.length];
+            for (int c = 0; c < all.length; c++)
+                all[c] = c;
+            columnChoices[0] = all;
+            columnChoiceCounts[0] = all.length;
+            rowCores[0] = first;
+            narrow(1);
+            rows(1, first + 1, cards, value);
+            problem.nodes.addAndGet(nodes);
+        }
+
+        /**
+         * Tries the row cores chosen so far with every set of column cores
+         * that could go with them, and then with each further row core that
+         * comes after them in the problem's order.
+         *
+         * @param count how many row cores there are
+         * @param from the first core that may be added
+         * @param used the cards in the row cores
+         * @param value what the row cores are worth
+         */
+        private void rows(int count, int from, int used, int value)
+        {
+            Problem problem = this.problem;
+            if (tick())
+            {
+                problem.leaveOpen(rowBound(count, used, value));
+                return;
+            }
+            // the rows are worth at least as much as the columns, or the transpose is tried instead
+            if (2 * value > problem.best.get())
+                columns(count, 0, 0, 0, 0, value);
+            if (count == 5)
+                return;
+            int[] coreCards = problem.coreCards, coreValues = problem.coreValues;
+            for (int c = from; c < coreCards.length; c++)
+            {
+                int most = value + (5 - count) * coreValues[c];
+                if (most + Math.min(most, problem.packing) <= problem.best.get())
+                    break;
+                if ((coreCards[c] & used) != 0
+                    || rowBound(count + 1, used | coreCards[c], value + coreValues[c])
+                       <= problem.best.get())
+                    continue;
+                rowCores[count] = c;
+                narrow(count + 1);
+                rows(count + 1, c + 1, used | coreCards[c], value + coreValues[c]);
+                if (problem.timedOut)
+                {
+                    problem.leaveOpen(rowBound(count, used, value));
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Tries the column cores chosen so far with the row cores, and then
+         * with each further column core, as long as the columns stay worth no
+         * more than the rows.
+         *
+         * @param rowCount how many row cores there are
+         * @param count how many column cores there are
+         * @param from the first of the column choices that may be added
+         * @param used the cards in the column cores
+         * @param value what the column cores are worth
+         * @param rowValue what the row cores are worth
+         */
+        private void columns(int rowCount, int count, int from, int used, int value, int rowValue)
+        {
+            Problem problem = this.problem;
+            if (tick())
+            {
+                problem.leaveOpen(columnBound(count, used, value, rowValue));
+                return;
+            }
+            if (rowValue + value > problem.best.get())
+                complete(rowCount, count);
+            if (count == 5)
+                return;
+            int[] choices = columnChoices[rowCount];
+            int[] coreCards = problem.coreCards, coreValues = problem.coreValues;
+            for (int i = from, n = columnChoiceCounts[rowCount]; i < n; i++)
+            {
+                int c = choices[i];
+                if (rowValue + Math.min(rowValue, value + (5 - count) * coreValues[c]) <= problem.best.get())
+                    break;
+                if ((coreCards[c] & used) != 0 || value + coreValues[c] > rowValue
+                    || columnBound(count + 1, used | coreCards[c], value + coreValues[c], rowValue)
+                       <= problem.best.get())
+                    continue;
+                columnCores[count] = c;
+                columns(rowCount, count + 1, i + 1, used | coreCards[c], value + coreValues[c], rowValue);
+                if (problem.timedOut)
+                {
+                    problem.leaveOpen(columnBound(count, used, value, rowValue));
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the most that any rows and columns could be worth, once the
+         *         row cores chosen so far have had more added to them
+         */
+        private int rowBound(int count, int used, int value)
+        {
+            int rows = value + problem.pack(used, 5 - count);
+            return rows + Math.min(rows, problem.packing);
+        }
+
+        /**
+         * @return the most that the rows and columns could be worth, with the
+         *         row cores fixed, once the column cores chosen so far have
+         *         had more added to them
+         */
+        private int columnBound(int count, int used, int value, int rowValue)
+        {
+            return rowValue + Math.min(rowValue, value + problem.pack(used, 5 - count));
+        }
+
+        /** Keeps the column choices of the row cores before the last that can go with the last */
+        private void narrow(int count)
+        {
+            int last = problem.coreCards[rowCores[count - 1]];
+            int[] choices = columnChoices[count - 1];
+            int n = columnChoiceCounts[count - 1];
+            if (columnChoices[count] == null || columnChoices[count].length < n)
+                columnChoices[count] = new int[n];
+            int[] narrowed = columnChoices[count];
+            int kept = 0;
+            for (int i = 0; i < n; i++)
+                if (Integer.bitCount(problem.coreCards[choices[i]] & last) <= 1)
+                    narrowed[kept++] = choices[i];
+            columnChoiceCounts[count] = kept;
+        }
+
+        /**
+         * Looks for an arrangement with row core r in row r and column core c
+         * in column c, which is worth at least as much as the cores, and offers
+         * it.  The card a row core and a column core share goes where they
+         * cross, any other card of a core goes anywhere in its line, and the
+         * cards in no core go anywhere at all, so it is a matching of cards to
+         * spaces, found one augmenting path at a time.
+         */
+        private void complete(int rowCount, int columnCount)
+        {
+            int[] allowed = this.allowed, holder = this.holder;
+            Arrays.fill(allowed, (1 << 25) - 1);
+            for (int r = 0; r < rowCount; r++)
+                for (int rest = problem.coreCards[rowCores[r]]; rest != 0; rest &= rest - 1)
+                    allowed[Integer.numberOfTrailingZeros(rest)] &= ROW << 5 * r;
+            for (int c = 0; c < columnCount; c++)
+                for (int rest = problem.coreCards[columnCores[c]]; rest != 0; rest &= rest - 1)
+                    allowed[Integer.numberOfTrailingZeros(rest)] &= COLUMN << c;
+            Arrays.fill(holder, -1);
+            for (int k = 0; k < 25; k++)
+            {
+                visited = 0;
+                if (!augment(k))
+                    return;
+            }
+            problem.offer(holder, score(problem, holder));
+        }
+
+        /** @return true if card k could be given a space, moving other cards along if need be */
+        private boolean augment(int k)
+        {
+            for (int rest = allowed[k] & ~visited; rest != 0; rest &= rest - 1)
+            {
+                int cell = Integer.numberOfTrailingZeros(rest);
+                if ((visited & 1 << cell) != 0)
+                    continue;
+                visited |= 1 << cell;
+                if (holder[cell] < 0 || augment(holder[cell]))
+                {
+                    holder[cell] = k;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Counts a node, and looks at the clock every so often; @return true if the time is up */
+        private boolean tick()
+        {
+            if (++nodes % CLOCK_NODES == 0 && System.nanoTime() > problem.deadline)
+                problem.timedOut = true;
+            return problem.timedOut;
+        }
+    }
+
+    /**
+     * An arrangement of 25 cards and how it was found.
+     */
+    public static final class Solution
+    {
+        private final Card[] cards;
+        private final int score;
+        private final int upperBound;
+        private final long nodes;
+        private final long nanos;
+
+        Solution(Card[] cards, int score, int upperBound, long nodes, long nanos)
+        {
+            this.cards = cards;
+            this.score = score;
+            this.upperBound = upperBound;
+            this.nodes = nodes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the arrangement's score: the hindsight score if the solve
+         *         is {@link #isOptimal}, and otherwise only a lower bound on it
+         */
+        public int getScore() {return score;}
+
+        /**
+         * @return the most any arrangement of the deal could score: the score
+         *         itself if the search finished, or else the highest bound of
+         *         the nodes it had to leave
+         */
+        public int getUpperBound() {return upperBound;}
+
+        /** @return true if no arrangement scores more, false if the solve ran out of time before proving it */
+        public boolean isOptimal() {return upperBound == score;}
+
+        /** @return the card in a space, numbered row by row */
+        public Card getCard(int cell) {return cards[cell];}
+
+        /** @return the number of search nodes tried */
+        public long getNodes() {return nodes;}
+
+        /** @return how long the solve took */
+        public long getNanos() {return nanos;}
+
+        /** @return a new square holding the arrangement */
+        public PokerSquare toSquare()
+        {
+            PokerSquare square = new PokerSquare();
+            for (int cell = 0; cell < 25; cell++)
+                square.setCard(cell / 5, cell % 5, cards[cell]);
+            return square;
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        HindsightSolver solver = new HindsightSolver();
+        solver.setTimeLimit((long) ((args.length > 1 ? Double.parseDouble(args[1]) : 10) * 1000));
+        Totals totals = new Totals();
+        long start = System.nanoTime();
+
+        if (args.length > 0 && args[0].matches("\\d+"))
+        {
+            int deals = Integer.parseInt(args[0]);
+            long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : new SplittableRandom().nextLong();
+            System.out.println("First seed: " + firstSeed);
+            Deck deck = new Deck();
+            Card[] dealt = new Card[25];
+            for (int g = 0; g < deals; g++)
+            {
+                deck.reset();
+                deck.shuffle(firstSeed + g);
+                for (int k = 0; k < 25; k++)
+                    dealt[k] = deck.dealCard();
+                Solution solution = solver.solve(dealt);
+                totals.add(-1, solution);
+                if (deals <= 10)
+                    System.out.println("Seed " + (firstSeed + g) + ": "
+                                       + (solution.isOptimal() ? solution.getScore()
+                                          : "at least " + solution.getScore() + ", at most "
+                                            + solution.getUpperBound() + ", not proven")
+                                       + ", "
+                                       + solution.getNodes() + " nodes, "
+                                       + solution.getNanos() / 1_000_000 + " ms\n" + solution.toSquare());
+            }
+        }
+        else
+        {
+            long games = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+            try (GameLog.Reader reader = new GameLog.Reader(Path.of(args[0])))
+            {
+                GameLog.Record record = new GameLog.Record();
+                for (long i = 0; i < reader.getCount() && totals.games < games; i++)
+                    if (reader.read(i, record).isDone())
+                    {
+                        totals.add(record.getScore(), solver.solve(record));
+                        if (totals.games % 100 == 0)
+                            System.out.println(totals.games + " games...");
+                    }
+            }
+        }
+        System.out.print(totals.toString(System.nanoTime() - start));
+    }
+
+    /** Running totals for the command line */
+    private static final class Totals
+    {
+        long games, played, lowerBounds, upperBounds, unproven, nodes;
+
+        /** @param played the score the game actually made, or -1 if it wasn't played */
+        void add(int played, Solution solution)
+        {
+            games++;
+            this.played += Math.max(played, 0);
+            lowerBounds += solution.getScore();
+            upperBounds += solution.getUpperBound();
+            if (!solution.isOptimal())
+                unproven++;
+            nodes += solution.getNodes();
+        }
+
+        String toString(long nanos)
+        {
+            StringBuilder s = new StringBuilder();
+            s.append("Deals solved: ").append(games).append(", proven optimal: ").append(games - unproven).append('\n');
+            if (unproven == 0)
+            {
+                s.append(String.format("Mean hindsight score: %.3f%n", (double) upperBounds / games));
+                if (played > 0)
+                    s.append(String.format("Mean score played: %.3f (%.1f%% of hindsight)%n",
+                                           (double) played / games, 100.0 * played / upperBounds));
+            }
+            else
+            {
+                // the proven upper bound is the yardstick; the best arrangements found only give a lower bound
+                s.append(String.format("Mean hindsight score: at most %.3f (proven upper bound),"
+                                       + " at least %.3f (best arrangements found)%n",
+                                       (double) upperBounds / games, (double) lowerBounds / games));
+                if (played > 0)
+                    s.append(String.format("Mean score played: %.3f (at least %.1f%% of hindsight,"
+                                           + " at most %.1f%%)%n", (double) played / games,
+                                           100.0 * played / upperBounds, 100.0 * played / lowerBounds));
+            }
+            s.append(String.format("Mean nodes per deal: %.0f%n", (double) nodes / games));
+            s.append(String.format("Time: %.1f s, %.1f ms per deal%n", nanos / 1e9, nanos / 1e6 / games));
+            return s.toString();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The exact odds of each hand category for a row or column that isn't full yet.
+ * <p>
+ * If a line has k cards and the rest are dealt from the undealt cards, every
+ * set of 5 - k undealt cards is equally likely to fill it.  Rather than try
+ * them all, the odds are counted from the ranks and suits:
+ * <ol>
+ * <li>For each way to choose how many cards of each rank to draw, the number
+ *     of hands is the product of C(undealt cards of that rank, drawn).  The
+ *     ranks alone decide pairs, trips and so on, and straights.</li>
+ * <li>A flush needs every card in the line to share a suit, so it is only
+ *     possible if the cards already there do.  The draws that complete one
+ *     are counted straight from the undealt ranks of that suit.  They had
+ *     been counted as High Card or a Straight in step 1, and are moved to
+ *     Flush or Straight Flush.</li>
+ * </ol>
+ * That's at most a few thousand rank combinations, instead of up to 2.6 million
+ * hands.
+ * <p>
+ * Only the counts matter, not which suit is which, so the odds are cached by
+ * a signature of the line's rank counts, the undealt rank counts, and the
+ * undealt ranks of each suit that could still make a flush.  Lines from
+ * different squares, or with their suits renamed, share cache entries.
+ * <p>
+ * Only cards from a default deck are counted.
+ */
+public class LineOdds
+{
+    /**
+     * The most signatures to cache.  When the cache is full it is emptied and
+     * starts again, so it follows whatever games are being played now instead
+     * of keeping the first signatures it saw for good.  The odds of a common
+     * signature are soon worked out again.
+     */
+    private static final int CACHE_SIZE = 1 << 16;
+
+    private static final ConcurrentHashMap<Key, LineOdds> CACHE = new ConcurrentHashMap<>();
+
+    /** CHOOSE[n][k] is n choose k */
+    private static final long[][] CHOOSE = new long[53][6];
+
+    static
+    {
+        for (int n = 0; n < CHOOSE.length; n++)
+        {
+            CHOOSE[n][0] = 1;
+            for (int k = 1; k < 6 && k <= n; k++)
+                CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + (k < n ? CHOOSE[n - 1][k] : 0);
+        }
+    }
+
+    /** hands[c] is the number of ways to fill the line that end as category c */
+    private final long[] hands = new long[9];
+
+    /** The number of ways to fill the line */
+    private final long total;
+
+    private LineOdds(long total)
+    {
+        this.total = total;
+    }
+
+    /**
+     * Works out the odds for one line of a square.
+     *
+     * @param square the square in progress
+     * @param line 0-4 for the rows, 5-9 for the columns
+     * @param remaining the undealt cards
+     * @return the odds of each category when the line is filled
+     */
+    public static LineOdds of(PokerSquare square, int line, Deck remaining)
+    {
+        Card[] cards = new Card[5];
+        for (int k = 0; k < 5; k++)
+            cards[k] = line < 5 ? square.getCard(line, k) : square.getCard(k, line - 5);
+        return of(cards, remaining);
+    }
+
+    /**
+     * Works out the odds for a line of five cards, some of them blank.
+     *
+     * @param line the cards in the line; blanks are the spaces to fill
+     * @param remaining the undealt cards
+     * @return the odds of each category when the line is filled
+     * @throws IllegalArgumentException if a card isn't from a default deck, or
+     *         there aren't enough undealt cards to fill the line
+     */
+    public static LineOdds of(Card[] line, Deck remaining)
+    {
+        // rank counts 3 bits per rank, suits as 13-bit rank masks
+        long lineRanks = 0;
+        int lineSuits = 0, filled = 0;
+        for (Card card : line)
+        {
+            int id = id(card);
+            if (id == Card.BLANK_ID)
+                continue;
+            lineRanks += 1L << 3 * (id >> 2);
+            lineSuits |= 1 << (id & 3);
+            filled++;
+        }
+        long undealtRanks = 0;
+        int[] suitRanks = new int[4];
+        for (int i = 0; i < remaining.getSize(); i++)
+        {
+            int id = id(remaining.getCard(i));
+            if (id == Card.BLANK_ID)
+                throw new IllegalArgumentException("blank card in the deck");
+            undealtRanks += 1L << 3 * (id >> 2);
+            suitRanks[id & 3] |= 1 << (id >> 2);
+        }
+        int draws = 5 - filled;
+        if (remaining.getSize() < draws)
+            throw new IllegalArgumentException("only " + remaining.getSize() + " cards left to fill " + draws + " spaces");
+
+        // the undealt ranks of each suit that could still make a flush, sorted
+        int[] flushes;
+        if (filled == 0)
+            flushes = suitRanks.clone();
+        else if (Integer.bitCount(lineSuits) == 1)
+            flushes = new int[] {suitRanks[Integer.numberOfTrailingZeros(lineSuits)]};
+        else
+            flushes = new int[0];
+        Arrays.sort(flushes);
+
+        Key key = new Key(lineRanks, undealtRanks, flushes);
+        LineOdds odds = CACHE.get(key);
+        if (odds == null)
+        {
+            odds = count(lineRanks, undealtRanks, flushes, draws, remaining.getSize());
+            if (CACHE.size() >= CACHE_SIZE)
+                CACHE.clear();
+            CACHE.putIfAbsent(key, odds);
+        }
+        return odds;
+    }
+
+    /** @return a default card's id, or Card.BLANK_ID */
+    private static int id(Card card)
+    {
+        int id = card.getId();
+        if (id < 0)
+            throw new IllegalArgumentException("not a default card: " + card);
+        return id;
+    }
+
+    /** Counts the hands of each category, as described above */
+    private static LineOdds count(long lineRanks, long undealtRanks, int[] flushes, int draws, int undealt)
+    {
+        LineOdds odds = new LineOdds(CHOOSE[undealt][draws]);
+        odds.countRanks(0, lineRanks, undealtRanks, draws, 1);
+
+        int lineBits = 0;
+        for (int r = 0; r < 13; r++)
+            if ((lineRanks >>> 3 * r & 7) != 0)
+                lineBits |= 1 << r;
+        for (int suit : flushes)
+            odds.countFlushes(suit, lineBits, draws);
+        return odds;
+    }
+
+    /**
+     * Tries every number of cards to draw of each rank from <code>rank</code> up.
+     *
+     * @param ranks the line's rank counts so far, 3 bits per rank
+     * @param ways the number of ways to draw the cards chosen so far
+     */
+    private void countRanks(int rank, long ranks, long undealtRanks, int draws, long ways)
+    {
+        if (draws == 0)
+        {
+            int matches = 0, bits = 0;
+            for (int r = 0; r < 13; r++)
+            {
+                int n = (int) (ranks >>> 3 * r & 7);
+                matches += n * (n - 1) / 2;
+                if (n != 0)
+                    bits |= 1 << r;
+            }
+            int straight = isStraight(bits) ? 4 : 0;
+            hands[HandEvaluator.getCategory(HandEvaluator.classify(matches, straight, 0))] += ways;
+            return;
+        }
+        if (rank == 13)
+            return;
+        int available = (int) (undealtRanks >>> 3 * rank & 7);
+        for (int n = 0; n <= available && n <= draws; n++)
+            countRanks(rank + 1, ranks + ((long) n << 3 * rank), undealtRanks,
+                       draws - n, ways * CHOOSE[available][n]);
+    }
+
+    /**
+     * Moves the draws that make a flush in one suit out of High Card and Straight.
+     *
+     * @param suit the undealt ranks of the suit
+     * @param lineBits the ranks already in the line, all of this suit
+     */
+    private void countFlushes(int suit, int lineBits, int draws)
+    {
+        if (Integer.bitCount(suit) < draws)
+            return;
+        // every set of draws bits from suit, smallest first
+        for (int pick = (1 << draws) - 1; pick < 1 << Integer.bitCount(suit); pick = nextPick(pick))
+        {
+            int bits = lineBits | deposit(pick, suit);
+            boolean straight = isStraight(bits);
+            hands[straight ? 4 : 0]--;
+            hands[straight ? 8 : 5]++;
+            if (draws == 0)
+                break;
+        }
+    }
+
+    /** @return the next larger int with the same number of bits set */
+    private static int nextPick(int pick)
+    {
+        int low = pick & -pick, ripple = pick + low;
+        return ripple | ((pick ^ ripple) >>> 2) / low;
+    }
+
+    /** Spreads the low bits of pick out onto the set bits of mask, in order */
+    private static int deposit(int pick, int mask)
+    {
+        int bits = 0;
+        for (int m = mask; pick != 0; m &= m - 1, pick >>>= 1)
+            if ((pick & 1) != 0)
+                bits |= m & -m;
+        return bits;
+    }
+
+    /** @return true if the rank bits are five in a row */
+    private static boolean isStraight(int bits)
+    {
+        return bits != 0 && bits >>> Integer.numberOfTrailingZeros(bits) == 0x1F;
+    }
+
+    /** @return the number of ways to fill the line */
+    public long getTotal() {return total;}
+
+    /**
+     * @param category a category from 0 (High Card) to 8 (Straight Flush)
+     * @return the number of ways to fill the line that end as that category
+     */
+    public long getHands(int category) {return hands[category];}
+
+    /**
+     * @param category a category from 0 (High Card) to 8 (Straight Flush)
+     * @return the chance the line ends as that category
+     */
+    public double getProbability(int category)
+    {
+        return (double) hands[category] / total;
+    }
+
+    /** @return the line's expected score under the English system */
+    public double getExpectedValue()
+    {
+        double sum = 0;
+        for (int c = 0; c < hands.length; c++)
+            sum += (double) hands[c] * HandEvaluator.HAND_VALUES[c];
+        return sum / total;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < hands.length; c++)
+            if (hands[c] != 0)
+                sb.append(String.format("%-16s %8.4f%%%n", HandEvaluator.HAND_RANKS[c], 100 * getProbability(c)));
+        sb.append(String.format("Expected score: %.4f%n", getExpectedValue()));
+        return sb.toString();
+    }
+
+    /** What the odds depend on, with the suits' names left out */
+    private static final class Key
+    {
+        private final long lineRanks;
+        private final long undealtRanks;
+        private final int[] flushes;
+
+        Key(long lineRanks, long undealtRanks, int[] flushes)
+        {
+            this.lineRanks = lineRanks;
+            this.undealtRanks = undealtRanks;
+            this.flushes = flushes;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return lineRanks == other.lineRanks && undealtRanks == other.undealtRanks
+                   && Arrays.equals(flushes, other.flushes);
+        }
+
+        public int hashCode()
+        {
+            return Long.hashCode(lineRanks * 31 + undealtRanks) * 31 + Arrays.hashCode(flushes);
+        }
+    }
+}
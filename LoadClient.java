@@ -0,0 +1,208 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plays many games against a GameServer at once and measures how long each
+ * move takes to come back.
+ * <p>
+ * For each session count, the client opens that many connections, each on its
+ * own virtual thread, and has every session play a number of complete games,
+ * putting each card in a random empty space.  The round trip of every move is
+ * timed, and the client reports the median and 99th percentile along with
+ * moves per second, then goes on to the next session count.
+ * <p>
+ * From the command line:
+ * <pre>java LoadClient [host:port | local] [games per session] [session counts...]</pre>
+ * <code>local</code> starts a server inside the client on a free port, which
+ * is the quickest way to check the server on one machine.  The defaults are
+ * <code>local 4 100 1000 5000</code>.
+ */
+public class LoadClient
+{
+    private final String host;
+    private final int port;
+
+    /**
+     * @param host where the server is
+     * @param port the server's port
+     */
+    public LoadClient(String host, int port)
+    {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Runs a number of sessions at once, and waits for them all to finish.
+     *
+     * @param sessions how many sessions to run
+     * @param games how many games each session plays
+     * @return a line describing the latencies and the throughput
+     */
+    public String run(int sessions, int games) throws InterruptedException
+    {
+        long[][] latencies = new long[sessions][];
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        long start;
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor())
+        {
+            for (int s = 0; s < sessions; s++)
+            {
+                int session = s;
+                threads.execute(() -> latencies[session] = play(session, games, connected, go));
+            }
+            // connect everyone first, so the timing is all moves and no handshakes
+            connected.await();
+            start = System.nanoTime();
+            go.countDown();
+        }
+        long nanos = System.nanoTime() - start;
+
+        int failed = 0, count = 0;
+        for (long[] l : latencies)
+            if (l == null)
+                failed++;
+            else
+                count += l.length;
+        long[] all = new long[count];
+        int n = 0;
+        for (long[] l : latencies)
+            if (l != null)
+            {
+                System.arraycopy(l, 0, all, n, l.length);
+                n += l.length;
+            }
+        Arrays.sort(all);
+        return String.format("sessions %6d  moves %8d  p50 %8.1f us  p99 %8.1f us  max %8.1f us  %9.0f moves/s%s",
+                             sessions, count, percentile(all, 0.5) / 1e3, percentile(all, 0.99) / 1e3,
+                             count == 0 ? 0 : all[count - 1] / 1e3, count * 1e9 / nanos,
+                             failed > 0 ? "  (" + failed + " sessions failed)" : "");
+    }
+
+    private static long percentile(long[] sorted, double p)
+    {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, p * sorted.length)];
+    }
+
+    /**
+     * Plays one session's games.
+     *
+     * @return the round trip of each move in nanoseconds, or null if the session failed
+     */
+    private long[] play(int session, int games, CountDownLatch connected, CountDownLatch go)
+    {
+        long[] latencies = new long[games * 25];
+        SplittableRandom random = new SplittableRandom(session);
+        Socket socket = null;
+        try
+        {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            connected.countDown();
+            connected = null;
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII), 128);
+            OutputStream out = socket.getOutputStream();
+            String state = in.readLine();
+            go.await();
+
+            int n = 0;
+            for (int g = 0; g < games; g++)
+            {
+                if (g > 0)
+                    state = send("NEW\n", in, out);
+                while (state != null && state.startsWith("PLAY"))
+                {
+                    String move = randomMove(state, random);
+                    long t = System.nanoTime();
+                    state = send(move, in, out);
+                    latencies[n++] = System.nanoTime() - t;
+                }
+                if (state == null || !state.startsWith("OVER"))
+                    throw new IOException("unexpected reply: " + state);
+            }
+            out.write("QUIT\n".getBytes(StandardCharsets.US_ASCII));
+            return latencies;
+        }
+        catch (IOException | InterruptedException e)
+        {
+            System.err.println("session " + session + " failed: " + e);
+            return null;
+        }
+        finally
+        {
+            if (connected != null)
+                connected.countDown();
+            if (socket != null)
+            {
+                try
+                {
+                    socket.close();
+                }
+                catch (IOException e)
+                {
+                    // nothing more to do with it
+                }
+            }
+        }
+    }
+
+    private static String send(String command, BufferedReader in, OutputStream out) throws IOException
+    {
+        out.write(command.getBytes(StandardCharsets.US_ASCII));
+        return in.readLine();
+    }
+
+    /** Picks a random empty space from a PLAY line, as a command like "B3\n" */
+    private static String randomMove(String state, SplittableRandom random)
+    {
+        int board = state.indexOf(' ', 5) + 1;
+        int chosen = -1, seen = 0;
+        for (int cell = 0; cell < 25; cell++)
+            if (state.charAt(board + cell * 2) == '.' && random.nextInt(++seen) == 0)
+                chosen = cell;
+        return "" + (char) ('A' + chosen / 5) + (char) ('1' + chosen % 5) + "\n";
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String where = args.length > 0 ? args[0] : "local";
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int[] counts = {100, 1000, 5000};
+        if (args.length > 2)
+        {
+            counts = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++)
+                counts[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        GameServer server = null;
+        LoadClient client;
+        if (where.equals("local"))
+        {
+            server = new GameServer(0, 60000);
+            server.start();
+            client = new LoadClient(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort());
+        }
+        else
+        {
+            int colon = where.lastIndexOf(':');
+            client = new LoadClient(where.substring(0, colon), Integer.parseInt(where.substring(colon + 1)));
+        }
+
+        for (int sessions : counts)
+            System.out.println(client.run(sessions, games));
+        if (server != null)
+            server.close();
+    }
+}
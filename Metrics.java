@@ -0,0 +1,380 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms for the hot paths, shown through JMX and an
+ * optional periodic text dump.
+ * <p>
+ * Instrumentation is off unless the JVM is started with
+ * <code>-Dpokersquares.metrics=true</code>.  Every hook is written as
+ * <pre>if (Metrics.ENABLED) Metrics.XXX.increment();</pre>
+ * and ENABLED is a static final, so when it's off the JIT drops the hooks and
+ * they cost nothing at all.  When it's on, everything is recorded in LongAdders,
+ * which spread updates from different threads over separate cells instead of
+ * fighting over one word.
+ * <p>
+ * Two things happen too often even for that.  The first is PokerSquare's
+ * scorings and Deck's deals.  They are counted per thread, in a
+ * {@link Counts} that only its own thread writes, with plain
+ * increments and no atomics.  Readers add up every thread's Counts, so a
+ * reading can trail a running thread by a few counts, but nothing is lost,
+ * and nobody has to hand anything in when they are done with a square or a
+ * deck.  Once a thread has ended, its Counts are folded into the adders and
+ * forgotten.  A square keeps its score up to date as cards come and go, so
+ * reading it is just a field, and what is counted as a scoring is each card
+ * put down with setCard or place, which rescores its row and column.  An
+ * undo rescores them too, but isn't counted again, so a search that tries a
+ * card and takes it back counts one scoring per try.
+ * <p>
+ * The other is timing a move.  System.nanoTime and the thread allocation
+ * counter cost about as much as a random move itself, so the Simulator only
+ * times one move of each game, chosen at random.  The histograms are a fair
+ * sample, and their counts are a 25th of the moves.  GameServer times one
+ * move of each game too, from the command arriving to the reply being sent,
+ * which is the server's side of a player's decision.
+ * <p>
+ * When enabled, the metrics are registered as <code>pokersquares:type=Metrics</code>
+ * with the platform MBean server, for jconsole or any other JMX client.  Set
+ * <code>pokersquares.metrics.dump</code> to a number of seconds to also print
+ * {@link #dump} to standard error that often.
+ */
+public final class Metrics implements MetricsMBean
+{
+    /** True if the hooks should record anything */
+    public static final boolean ENABLED = Boolean.getBoolean("pokersquares.metrics");
+
+    /** Hands evaluated by PokerHand */
+    public static final LongAdder EVALUATIONS = new LongAdder();
+
+    /** The scorings of threads that have ended */
+    private static final LongAdder SCORINGS = new LongAdder();
+
+    /** The deals of threads that have ended */
+    private static final LongAdder DEALS = new LongAdder();
+
+    /** Each thread's own Counts, made the first time it counts anything */
+    private static final ThreadLocal<Counts> COUNTS = ThreadLocal.withInitial(Metrics::register);
+
+    /** The Counts of every thread that may still be running, guarded by itself */
+    private static final List<Counts> THREAD_COUNTS = new ArrayList<>();
+
+    /** How many Counts there can be before the next look for threads that have ended */
+    private static int retireAt = 64;
+
+    /** The totals when the counts were last reset */
+    private static volatile long scoringsReset, dealsReset;
+
+    /** Decks shuffled */
+    public static final LongAdder SHUFFLES = new LongAdder();
+
+    /** Games played to the end */
+    public static final LongAdder GAMES = new LongAdder();
+
+    /** How long policies take to choose a space, in nanoseconds, for sampled moves */
+    public static final Histogram DECISION_NANOS = new Histogram();
+
+    /** Bytes allocated by the thread while choosing a space and placing the card, for sampled moves */
+    public static final Histogram MOVE_BYTES = new Histogram();
+
+    /**
+     * How long GameServer takes to handle a player's move, from the command to
+     * the reply, in nanoseconds, for one sampled move of each game
+     */
+    public static final Histogram SERVER_MOVE_NANOS = new Histogram();
+
+    /** Counts allocations, or null if they can't be counted or metrics are off */
+    private static final com.sun.management.ThreadMXBean THREADS = ENABLED ? threads() : null;
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    static
+    {
+        if (ENABLED)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer()
+                                 .registerMBean(INSTANCE, new ObjectName("pokersquares:type=Metrics"));
+            }
+            catch (JMException e)
+            {
+                System.err.println("couldn't register the metrics MBean: " + e);
+            }
+            long seconds = Long.getLong("pokersquares.metrics.dump", 0);
+            if (seconds > 0)
+                startDump(System.err, seconds);
+        }
+    }
+
+    private Metrics() {}
+
+    /** @return the thread bean, if this JVM can count allocations, otherwise null */
+    private static com.sun.management.ThreadMXBean threads()
+    {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported())
+            {
+                sun.setThreadAllocatedMemoryEnabled(true);
+                return sun;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the bytes the current thread has allocated so far, or 0 if the
+     *         JVM can't tell
+     */
+    public static long allocatedBytes()
+    {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Prints {@link #dump} every so often on a daemon thread.
+     *
+     * @param out where to print
+     * @param seconds how often
+     */
+    public static void startDump(PrintStream out, long seconds)
+    {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(() -> out.print(INSTANCE.dump()), seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * One thread's counts of the events too frequent for a LongAdder.  Only
+     * the owner writes them.
+     */
+    static final class Counts
+    {
+        final Thread owner;
+
+        /** Cards put on a PokerSquare with setCard or place */
+        long scorings;
+
+        /** Cards dealt by Deck */
+        long deals;
+
+        private Counts(Thread owner)
+        {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * Finds the calling thread's Counts.  Squares and decks keep the last one
+     * they used, and pass it back here, so the ThreadLocal is only looked up
+     * when another thread takes them over.  They only store what comes back
+     * when it's a different Counts: a reference stored on every count costs a
+     * GC write barrier each time, which in GreedyPolicy's loop is most of the
+     * cost of counting.
+     *
+     * @param last the Counts used last time, or null
+     * @return the calling thread's Counts
+     */
+    static Counts counts(Counts last)
+    {
+        return last != null && last.owner == Thread.currentThread() ? last : COUNTS.get();
+    }
+
+    private static Counts register()
+    {
+        Counts counts = new Counts(Thread.currentThread());
+        synchronized (THREAD_COUNTS)
+        {
+            if (THREAD_COUNTS.size() >= retireAt)
+            {
+                retire();
+                retireAt = Math.max(64, 2 * THREAD_COUNTS.size());
+            }
+            THREAD_COUNTS.add(counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Folds the Counts of threads that have ended into the adders.  Seeing
+     * that a thread isn't alive any more also guarantees seeing everything it
+     * wrote.  Called holding THREAD_COUNTS.
+     */
+    private static void retire()
+    {
+        for (Iterator<Counts> i = THREAD_COUNTS.iterator(); i.hasNext();)
+        {
+            Counts counts = i.next();
+            if (!counts.owner.isAlive())
+            {
+                SCORINGS.add(counts.scorings);
+                DEALS.add(counts.deals);
+                i.remove();
+            }
+        }
+    }
+
+    /** @return what has been counted in an adder and in every thread's Counts */
+    private static long sum(LongAdder ended, ToLongFunction<Counts> count)
+    {
+        synchronized (THREAD_COUNTS)
+        {
+            retire();
+            long sum = ended.sum();
+            for (Counts counts : THREAD_COUNTS)
+                sum += count.applyAsLong(counts);
+            return sum;
+        }
+    }
+
+    /** @return the one Metrics object, as registered with JMX */
+    public static Metrics get() {return INSTANCE;}
+
+    public long getEvaluations() {return EVALUATIONS.sum();}
+    public long getScorings() {return sum(SCORINGS, c -> c.scorings) - scoringsReset;}
+    public long getDeals() {return sum(DEALS, c -> c.deals) - dealsReset;}
+    public long getShuffles() {return SHUFFLES.sum();}
+    public long getGames() {return GAMES.sum();}
+    public long getDecisions() {return DECISION_NANOS.getCount();}
+    public double getDecisionMeanNanos() {return DECISION_NANOS.getMean();}
+    public long getDecisionP50Nanos() {return DECISION_NANOS.getPercentile(0.5);}
+    public long getDecisionP99Nanos() {return DECISION_NANOS.getPercentile(0.99);}
+    public double getMoveMeanBytes() {return MOVE_BYTES.getMean();}
+    public long getMoveP99Bytes() {return MOVE_BYTES.getPercentile(0.99);}
+    public long getServerMoves() {return SERVER_MOVE_NANOS.getCount();}
+    public double getServerMoveMeanNanos() {return SERVER_MOVE_NANOS.getMean();}
+    public long getServerMoveP99Nanos() {return SERVER_MOVE_NANOS.getPercentile(0.99);}
+
+    public String dump()
+    {
+        return String.format("evaluations %d  scorings %d  deals %d  shuffles %d  games %d%n"
+                             + "decision ns: %s%nmove bytes:  %s%nserver ns:   %s%n",
+                             getEvaluations(), getScorings(), getDeals(), getShuffles(), getGames(),
+                             DECISION_NANOS, MOVE_BYTES, SERVER_MOVE_NANOS);
+    }
+
+    public void reset()
+    {
+        // other threads' Counts are theirs to write, so the totals so far are noted instead
+        synchronized (THREAD_COUNTS)
+        {
+            scoringsReset = sum(SCORINGS, c -> c.scorings);
+            dealsReset = sum(DEALS, c -> c.deals);
+        }
+        EVALUATIONS.reset();
+        SHUFFLES.reset();
+        GAMES.reset();
+        DECISION_NANOS.reset();
+        MOVE_BYTES.reset();
+        SERVER_MOVE_NANOS.reset();
+    }
+
+    /**
+     * A histogram of non-negative longs that many threads can record into at once.
+     * <p>
+     * Buckets go up in powers of two, with each power split into four, so any
+     * value is placed within 25% of where it really is.  256 buckets cover
+     * every long.
+     */
+    public static final class Histogram
+    {
+        private final LongAdder[] buckets = new LongAdder[256];
+        private final LongAdder sum = new LongAdder();
+
+        public Histogram()
+        {
+            for (int i = 0; i < buckets.length; i++)
+                buckets[i] = new LongAdder();
+        }
+
+        /** Records a value.  Negative values count as 0. */
+        public void record(long value)
+        {
+            value = Math.max(0, value);
+            buckets[bucket(value)].increment();
+            sum.add(value);
+        }
+
+        /** @return the bucket for a value: the top bit and the two bits after it */
+        private static int bucket(long value)
+        {
+            if (value < 4)
+                return (int) value;
+            int top = 63 - Long.numberOfLeadingZeros(value);
+            return (top - 1) * 4 + (int) (value >>> (top - 2) & 3);
+        }
+
+        /** @return the smallest value in a bucket */
+        private static long lowest(int bucket)
+        {
+            if (bucket < 4)
+                return bucket;
+            int top = bucket / 4 + 1;
+            return (long) (4 + bucket % 4) << (top - 2);
+        }
+
+        public long getCount()
+        {
+            long count = 0;
+            for (LongAdder b : buckets)
+                count += b.sum();
+            return count;
+        }
+
+        public double getMean()
+        {
+            long count = getCount();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        /**
+         * @param p a fraction from 0 to 1
+         * @return roughly the value that fraction p of the values are at or below
+         */
+        public long getPercentile(double p)
+        {
+            long[] counts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < counts.length; i++)
+                count += counts[i] = buckets[i].sum();
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++)
+            {
+                seen += counts[i];
+                if (seen >= rank && counts[i] > 0)
+                    return lowest(i);
+            }
+            return 0;
+        }
+
+        public void reset()
+        {
+            for (LongAdder b : buckets)
+                b.reset();
+            sum.reset();
+        }
+
+        public String toString()
+        {
+            return String.format("count %d  mean %.0f  p50 %d  p99 %d  p99.9 %d", getCount(), getMean(),
+                                 getPercentile(0.5), getPercentile(0.99), getPercentile(0.999));
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * What {@link Metrics} shows through JMX, under the name
+ * <code>pokersquares:type=Metrics</code>.  Times are in nanoseconds.
+ */
+public interface MetricsMBean
+{
+    /** @return hands evaluated by PokerHand */
+    long getEvaluations();
+
+    /** @return cards put on a PokerSquare with setCard or place, each rescoring a row and a column */
+    long getScorings();
+
+    /** @return cards dealt from decks */
+    long getDeals();
+
+    /** @return decks shuffled */
+    long getShuffles();
+
+    /** @return games played to the end */
+    long getGames();
+
+    /** @return placement decisions timed, one per game */
+    long getDecisions();
+
+    double getDecisionMeanNanos();
+
+    long getDecisionP50Nanos();
+
+    long getDecisionP99Nanos();
+
+    /** @return bytes allocated per move, on average */
+    double getMoveMeanBytes();
+
+    long getMoveP99Bytes();
+
+    /** @return player moves GameServer has timed, one per game */
+    long getServerMoves();
+
+    double getServerMoveMeanNanos();
+
+    long getServerMoveP99Nanos();
+
+    /** @return all of the above as text, the same as the periodic dump */
+    String dump();
+
+    /** Zeroes every counter and histogram */
+    void reset();
+}
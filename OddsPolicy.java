@@ -0,0 +1,37 @@
+/**
+ * A placement policy that puts each card wherever it raises the expected score
+ * of its row and column the most, using the exact odds from LineOdds.
+ * <p>
+ * Each line's odds are worked out as if it were the only line still being
+ * filled, so this is a heuristic, but a much better one than the score right
+ * now: a pair with three spaces left is worth more than a High Card with
+ * none.  Ties go to the first such space in row-major order.
+ */
+public class OddsPolicy implements PlacementPolicy
+{
+    public int chooseCell(PokerSquare square, Card next, Deck remaining)
+    {
+        double[] before = new double[10];
+        for (int line = 0; line < 10; line++)
+            before[line] = LineOdds.of(square, line, remaining).getExpectedValue();
+
+        int best = -1;
+        double bestGain = Double.NEGATIVE_INFINITY;
+        for (int cell = 0; cell < 25; cell++)
+        {
+            int i = cell / 5, j = cell % 5;
+            if (!square.isEmpty(i, j))
+                continue;
+            square.place(cell, next);
+            double gain = LineOdds.of(square, i, remaining).getExpectedValue() - before[i]
+                          + LineOdds.of(square, j + 5, remaining).getExpectedValue() - before[j + 5];
+            square.undo();
+            if (gain > bestGain)
+            {
+                bestGain = gain;
+                best = cell;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,375 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Precomputed best spaces for the first few cards of a game.
+ * <p>
+ * Early positions come up over and over, and they are the hardest to search,
+ * with the most cards still to come.  The book settles them ahead of time.
+ * Every position is stored in its CanonicalSquare form, so the 52 first cards
+ * are only 13 positions, and a position met with the rows, columns or suits
+ * shuffled is still found.
+ * <p>
+ * The generator works forward one card at a time.  Level 0 is every first card
+ * on an empty square.  Each position gets its best space from rollouts: every
+ * space that makes a different position is played out to the end the same
+ * number of times by a rollout policy, on the same shuffles of the deck, and
+ * the best average wins.  Level m + 1 is then every card that can follow each
+ * level m position once its card is in its best space, since a game that
+ * follows the book never sees the other spaces.  The positions of a level are
+ * spread across threads.
+ * <p>
+ * The file is a {@link #HEADER}-byte header, then the positions' canonical
+ * hashes as sorted longs, then one byte per position holding its best
+ * canonical space:
+ * <pre>
+ *  0  int     {@link #MAGIC}
+ *  4  int     the depth: the book covers the first depth cards
+ *  8  long    the number of positions
+ * 16  long[n] the hashes, in ascending order
+ *     byte[n] the spaces, in the same order</pre>
+ * Loading maps the file and reads nothing else, so it takes a millisecond or
+ * so however big the book is, and the pages come in as lookups touch them.
+ * A lookup is a canonicalization and a binary search.
+ * <p>
+ * From the command line:
+ * <pre>java OpeningBook file [depth] [rollouts per space] [rollout policy] [threads]</pre>
+ * with the policy names Simulator.getPolicy knows.
+ */
+public final class OpeningBook
+{
+    /** Marks the start of a book file: "PSOB" */
+    public static final int MAGIC = 0x50534F42;
+
+    public static final int HEADER = 16;
+
+    private final MappedByteBuffer map;
+    private final int depth;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer map)
+    {
+        this.map = map;
+        depth = map.getInt(4);
+        count = (int) map.getLong(8);
+    }
+
+    /**
+     * Maps a book file.
+     *
+     * @param file the book
+     * @return the book
+     * @throws IOException if the file can't be mapped or isn't a book
+     */
+    public static OpeningBook load(Path file) throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long size = ch.size();
+            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER || map.getInt(0) != MAGIC || size != HEADER + map.getLong(8) * 9)
+                throw new IOException(file + " is not an opening book");
+            return new OpeningBook(map);
+        }
+    }
+
+    /** @return how many cards from the start of a game the book covers */
+    public int getDepth() {return depth;}
+
+    /** @return the number of positions in the book */
+    public int size() {return count;}
+
+    /**
+     * Looks a position up.
+     *
+     * @param square the board
+     * @param next the card to place
+     * @param remaining the cards that can still be dealt, not including next
+     * @return the best space for the card, or -1 if the position isn't in the book
+     */
+    public int getBestCell(PokerSquare square, Card next, Deck remaining)
+    {
+        int placed = 0;
+        for (int row = 0; row < 5; row++)
+            placed += square.getLineFilled(row);
+        if (placed >= depth)
+            return -1;
+        CanonicalSquare canonical = CanonicalSquare.of(square, next, remaining);
+        int index = find(canonical.getHash());
+        return index < 0 ? -1 : canonical.fromCanonicalCell(map.get(HEADER + count * 8 + index));
+    }
+
+    /** @return the index of a hash in the book, or -1 */
+    private int find(long hash)
+    {
+        int lo = 0, hi = count - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            long key = map.getLong(HEADER + mid * 8);
+            if (key < hash)
+                lo = mid + 1;
+            else if (key > hash)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Works out a book and writes it to a file.  The file is written under a
+     * temporary name and moved into place when it's complete.
+     *
+     * @param file where to write the book
+     * @param depth how many cards from the start of a game to cover
+     * @param rollouts how many games to play out from each space
+     * @param policies makes the rollout policy, one for each thread
+     * @param threads the number of threads to work on
+     * @param out where to report progress
+     * @throws IOException if the file can't be written
+     */
+    public static void generate(Path file, int depth, int rollouts, Supplier<PlacementPolicy> policies,
+                                int threads, PrintStream out) throws IOException
+    {
+        List<CanonicalSquare> level = new ArrayList<>(firstLevel().values());
+        Map<Long, Integer> book = new HashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            for (int m = 0; m < depth && !level.isEmpty(); m++)
+            {
+                long start = System.nanoTime();
+                int[] best = solveLevel(pool, threads, level, rollouts, policies);
+                Map<Long, CanonicalSquare> nextLevel = new HashMap<>();
+                for (int p = 0; p < level.size(); p++)
+                {
+                    CanonicalSquare position = level.get(p);
+                    book.put(position.getHash(), best[p]);
+                    if (m + 1 < depth)
+                        expand(position, best[p], nextLevel);
+                }
+                out.printf("level %d: %d positions in %.1f s%n", m, level.size(), (System.nanoTime() - start) / 1e9);
+                level = new ArrayList<>(nextLevel.values());
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        write(file, depth, book);
+    }
+
+    /** @return every first card on an empty square, by canonical hash */
+    private static Map<Long, CanonicalSquare> firstLevel()
+    {
+        Map<Long, CanonicalSquare> level = new HashMap<>();
+        PokerSquare empty = new PokerSquare();
+        for (int id = 0; id < Card.BLANK_ID; id++)
+        {
+            CanonicalSquare position = CanonicalSquare.of(empty, Card.fromId(id), deckOf(~0L >>> 12 & ~(1L << id)));
+            level.putIfAbsent(position.getHash(), position);
+        }
+        return level;
+    }
+
+    /** Adds every position that follows one once its card is in a space */
+    private static void expand(CanonicalSquare position, int cell, Map<Long, CanonicalSquare> level)
+    {
+        PokerSquare square = position.toSquare();
+        square.setCard(cell / 5, cell % 5, position.getNext());
+        long deck = position.getDeck();
+        for (long b = deck; b != 0; b &= b - 1)
+        {
+            int id = Long.numberOfTrailingZeros(b);
+            CanonicalSquare next = CanonicalSquare.of(square, Card.fromId(id), deckOf(deck & ~(1L << id)));
+            level.putIfAbsent(next.getHash(), next);
+        }
+    }
+
+    /** @return a deck holding exactly the cards in a bit set of ids */
+    private static Deck deckOf(long ids)
+    {
+        Deck deck = new Deck();
+        for (int i = deck.getSize() - 1; i >= 0; i--)
+            if ((ids >>> deck.getCard(i).getId() & 1) == 0)
+                deck.removeCard(i);
+        return deck;
+    }
+
+    /** @return the best canonical space for each position of a level */
+    private static int[] solveLevel(ExecutorService pool, int threads, List<CanonicalSquare> level, int rollouts,
+                                    Supplier<PlacementPolicy> policies)
+    {
+        int[] best = new int[level.size()];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            int first = t;
+            tasks.add(() -> {
+                Rollouts solver = new Rollouts(policies.get(), rollouts);
+                // dealt round robin, since later positions aren't any harder than earlier ones
+                for (int p = first; p < best.length; p += threads)
+                    best[p] = solver.getBestCell(level.get(p));
+                return null;
+            });
+        }
+        try
+        {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while building the book", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("a rollout failed", e.getCause());
+        }
+        return best;
+    }
+
+    /** Plays positions out to find their best spaces.  One per thread. */
+    private static final class Rollouts
+    {
+        private final PlacementPolicy policy;
+        private final int rollouts;
+        private final PokerSquare square = new PokerSquare();
+        private final Deck deck = new Deck();
+
+        Rollouts(PlacementPolicy policy, int rollouts)
+        {
+            this.policy = policy;
+            this.rollouts = rollouts;
+        }
+
+        /** @return the canonical space with the best average rollout */
+        int getBestCell(CanonicalSquare position)
+        {
+            PokerSquare board = position.toSquare();
+            Card next = position.getNext();
+            long deckIds = position.getDeck();
+            // spaces that give the same position after the card is placed are only tried once
+            Map<Long, Integer> spaces = new HashMap<>();
+            for (int cell = 0; cell < 25; cell++)
+                if (board.isEmpty(cell / 5, cell % 5))
+                {
+                    board.place(cell, next);
+                    spaces.putIfAbsent(CanonicalSquare.of(board, Card.BLANK, deckOf(deckIds)).getHash(), cell);
+                    board.undo();
+                }
+            int[] cells = spaces.values().stream().mapToInt(Integer::intValue).sorted().toArray();
+            if (cells.length == 1)
+                return cells[0];
+
+            BoardSnapshot start = board.snapshot();
+            int best = -1;
+            long bestTotal = Long.MIN_VALUE;
+            for (int cell : cells)
+            {
+                long total = 0;
+                for (int r = 0; r < rollouts; r++)
+                    total += playOut(start, cell, next, deckIds, r);
+                if (total > bestTotal)
+                {
+                    bestTotal = total;
+                    best = cell;
+                }
+            }
+            return best;
+        }
+
+        /** Plays one game out from a space, on the deck shuffled by a seed */
+        private int playOut(BoardSnapshot start, int cell, Card next, long deckIds, long seed)
+        {
+            deck.reset();
+            deck.shuffle(seed);
+            // deal the cards that aren't in the deck, which leaves the rest in shuffled order
+            for (int i = deck.getSize() - 1; i >= 0; i--)
+                if ((deckIds >>> deck.getCard(i).getId() & 1) == 0)
+                    deck.removeCard(i);
+
+            square.restore(start);
+            square.setCard(cell / 5, cell % 5, next);
+            policy.startGame(seed);
+            while (!square.isFull())
+            {
+                Card card = deck.dealCard();
+                int c = policy.chooseCell(square, card, deck);
+                square.setCard(c / 5, c % 5, card);
+            }
+            return square.getScore();
+        }
+    }
+
+    /** Writes the book, sorted by hash */
+    private static void write(Path file, int depth, Map<Long, Integer> book) throws IOException
+    {
+        long[] hashes = new long[book.size()];
+        int n = 0;
+        for (long h : book.keySet())
+            hashes[n++] = h;
+        Arrays.sort(hashes);
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + n * 9).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(depth).putLong(n);
+        for (long h : hashes)
+            buf.putLong(h);
+        for (long h : hashes)
+            buf.put(book.get(h).byteValue());
+        buf.flip();
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try
+        {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE))
+            {
+                while (buf.hasRemaining())
+                    ch.write(buf);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Path.of(args.length > 0 ? args[0] : "opening-book.bin");
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int rollouts = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String policy = args.length > 3 ? args[3] : "greedy";
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("Depth: " + depth + ", rollouts: " + rollouts + " by " + policy + ", threads: " + threads);
+        long start = System.nanoTime();
+        generate(file, depth, rollouts, Simulator.getPolicy(policy), threads, System.out);
+        OpeningBook book = load(file);
+        System.out.printf("%d positions written to %s in %.1f s%n", book.size(), file, (System.nanoTime() - start) / 1e9);
+    }
+}
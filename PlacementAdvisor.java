@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Recommends where to place the next card on a PokerSquare.
+ * <p>
+ * For every empty space, the advisor places the card there and then plays the
+ * rest of the game out at random, many times over, keeping the average final
+ * score.  The space with the best average wins.  Each empty space gets its own
+ * fork/join task, so the rollouts are spread across all cores.  The tasks run
+ * in rounds of {@link #ROUND} rollouts each, all of them together, until the
+ * caller's deadline, so every space ends up with the same number of games
+ * however many cores there are, and the averages are compared fairly.
+ * <p>
+ * Spaces are numbered in row-major order, so space <code>row * 5 + column</code>.
+ * Row B, column 3 is space 7.
+ */
+public class PlacementAdvisor
+{
+    /** How many rollouts each space plays per round */
+    private static final int ROUND = 32;
+
+    /** The pool the rollouts run in */
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an advisor that runs its rollouts in the common fork/join pool.
+     */
+    public PlacementAdvisor()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an advisor that runs its rollouts in a given pool.
+     *
+     * @param pool the pool to use
+     */
+    public PlacementAdvisor(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Finds the empty space with the highest expected final score for a card.
+     * <p>
+     * Every empty space gets at least one round of rollouts, even if the
+     * deadline has already passed, so there is always an answer.  The last
+     * round can finish a little after the deadline, a few milliseconds at most.
+     *
+     * @param square the square in progress.  It is not changed.
+     * @param next the card to be placed
+     * @param remaining the cards that can still be dealt, not including next
+     * @param deadline when to stop, as a System.nanoTime() value
+     * @return the best space found, or -1 if the square is full
+     */
+    public int getBestCell(PokerSquare square, Card next, Deck remaining, long deadline)
+    {
+        Card[] cards = new Card[remaining.getSize()];
+        for (int i = 0; i < cards.length; i++)
+            cards[i] = remaining.getCard(i);
+
+        List<Rollouts> tasks = new ArrayList<>();
+        for (int cell = 0; cell < 25; cell++)
+            if (square.isEmpty(cell / 5, cell % 5))
+                tasks.add(new Rollouts(square, next, cards, cell));
+        if (tasks.isEmpty())
+            return -1;
+
+        pool.invoke(new RecursiveAction() {
+            protected void compute()
+            {
+                do
+                {
+                    for (Rollouts task : tasks)
+                        task.reinitialize();
+                    invokeAll(tasks);
+                }
+                while (System.nanoTime() - deadline < 0);
+            }
+        });
+
+        int best = -1;
+        double bestMean = -1;
+        for (Rollouts task : tasks)
+        {
+            double mean = task.getMean();
+            if (mean > bestMean)
+            {
+                bestMean = mean;
+                best = task.cell;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Converts a space number into the coordinate typed in Game, such as <b>B3</b>.
+     *
+     * @param cell a space from 0 to 24
+     * @return the space's coordinate
+     */
+    public static String getCoordinate(int cell)
+    {
+        return "" + (char) ('A' + cell / 5) + (char) ('1' + cell % 5);
+    }
+
+    /**
+     * Plays random games from one starting space, one round each time it runs.
+     */
+    private static class Rollouts extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final transient PokerSquare square;
+        private final transient Card[] cards;
+        private final int cell;
+
+        /** The empty spaces left after the first card is placed */
+        private final int[] empty;
+
+        private long total;
+        private long games;
+
+        Rollouts(PokerSquare start, Card next, Card[] cards, int cell)
+        {
+            this.square = new PokerSquare(start);
+            this.cards = cards.clone();
+            this.cell = cell;
+            square.setCard(cell / 5, cell % 5, next);
+
+            int n = 0;
+            int[] e = new int[25];
+            for (int c = 0; c < 25; c++)
+                if (square.isEmpty(c / 5, c % 5))
+                    e[n++] = c;
+            empty = Arrays.copyOf(e, n);
+        }
+
+        protected void compute()
+        {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int fill = Math.min(empty.length, cards.length);
+            for (int r = 0; r < ROUND; r++)
+            {
+                // deal the first few cards of a partial shuffle straight onto the empty spaces
+                for (int i = 0; i < fill; i++)
+                {
+                    int j = i + random.nextInt(cards.length - i);
+                    Card c = cards[j];
+                    cards[j] = cards[i];
+                    cards[i] = c;
+                    square.place(empty[i], c);
+                }
+                total += square.getScore();
+                games++;
+                for (int i = 0; i < fill; i++)
+                    square.undo();
+            }
+        }
+
+        double getMean()
+        {
+            return games == 0 ? 0 : (double) total / games;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Decides where each card goes on a PokerSquare.
+ * <p>
+ * The Simulator asks a policy for a space once for every card dealt.  Spaces are
+ * numbered in row-major order, so space <code>row * 5 + column</code>, the same
+ * as in PlacementAdvisor.
+ * <p>
+ * Each simulator thread gets its own policy, so a policy can keep scratch state
+ * without worrying about other threads.
+ */
+public interface PlacementPolicy
+{
+    /**
+     * Chooses an empty space for the next card.
+     *
+     * @param square the square in progress.  The policy may change it while it
+     *               thinks, but must put it back the way it was before returning.
+     * @param next the card to be placed
+     * @param remaining the cards that can still be dealt, not including next
+     * @return an empty space from 0 to 24
+     */
+    int chooseCell(PokerSquare square, Card next, Deck remaining);
+
+    /**
+     * Tells the policy a new game is starting.  A policy that makes random
+     * choices should seed them from here, so that a seeded game can be
+     * replayed exactly.
+     *
+     * @param seed the seed the game's deck was shuffled with
+     */
+    default void startGame(long seed) {}
+}
@@ -3,23 +3,20 @@ import java.util.ArrayList;
 public class PokerHand extends Deck
 { 
     /** the ranks of hands, from High Card, to Straight Flush */
-    private String[] handRanks;
+    private static final String[] handRanks = HandEvaluator.HAND_RANKS;
         
     /** the relative numeric rank of the hand, for comparison */
     private int rank;
     
     /** the scores of the hands under the English Poker Soliatire system */
-    private int[] handValues;
+    private static final int[] handValues = HandEvaluator.HAND_VALUES;
 
     /**
-     * Class default constructor populating the names of Poker Hands
+     * Class default constructor creating an empty hand
      */    
     public PokerHand()
     {
-        deck = new ArrayList<Card>();
-        handRanks = new String[] {"High Card", "One Pair", "Two Pair", "Three of a Kind",
-            "Straight", "Flush", "Full House", "Four of a Kind", "Straight Flush"};
-        handValues = new int[] {0,1,3,6,12,5,10,16,30};
+        super(5);
     }
     
     /**
@@ -27,9 +24,7 @@ public class PokerHand extends Deck
      */ 
     public PokerHand(Card... cards)
     {
-        this();
-        for (Card card: cards)
-            deck.add(card);
+        super(cards);
     }
        
     /**
@@ -39,9 +34,9 @@ public class PokerHand extends Deck
      */ 
     public PokerHand(Deck otherDeck)
     {
-        this();
-        for (int i = 0; i < 5; i++)
-            deck.add(otherDeck.removeCard(0));
+        // arguments are evaluated left to right, so this deals the top card first
+        this(otherDeck.dealCard(), otherDeck.dealCard(), otherDeck.dealCard(),
+             otherDeck.dealCard(), otherDeck.dealCard());
     }
     
     /**
@@ -54,6 +49,46 @@ public class PokerHand extends Deck
      */
 
     public int getRankInt()
+    {
+        return HandEvaluator.getCategory(evaluate());
+    }
+
+    /**
+     * Evaluates the hand once, returning both its category and its score.
+     * <p>
+     * Five-card hands whose cards can all be packed are handed to HandEvaluator,
+     * or looked up in the HandTable if one has been configured.  Anything else
+     * (other hand sizes, or cards from a custom deck that can't be packed)
+     * goes through the original chain of checks below.
+     * 
+     * @return the packed result, as described in HandEvaluator.evaluate
+     */
+    private int evaluate()
+    {
+        if (Metrics.ENABLED)
+            Metrics.EVALUATIONS.increment();
+        if (getSize() == 5)
+        {
+            int c0 = getCard(0).getCode(), c1 = getCard(1).getCode(), c2 = getCard(2).getCode(),
+                c3 = getCard(3).getCode(), c4 = getCard(4).getCode();
+            if ((c0 | c1 | c2 | c3 | c4) >= 0)
+            {
+                HandTable table = HandTable.getDefault();
+                return table != null ? table.evaluate(c0, c1, c2, c3, c4)
+                                     : HandEvaluator.evaluate(c0, c1, c2, c3, c4);
+            }
+        }
+        int category = getRankIntSlow();
+        return handValues[category] << 4 | category;
+    }
+
+    /**
+     * Determines the rank of the hand by checking each kind of hand in turn,
+     * from the strongest to the weakest.
+     * 
+     * @return a number from 0-8 indicating the relative strength of the poker hand.
+     */
+    private int getRankIntSlow()
     {
         if (isStraightFlush()) return 8;
         if (isFourOfAKind())   return 7;
@@ -74,7 +109,7 @@ public class PokerHand extends Deck
      */
     public int getHandValue()
     {
-        return handValues[getRankInt()];
+        return HandEvaluator.getScore(evaluate());
     }
 
     /**
@@ -109,9 +144,10 @@ public class PokerHand extends Deck
      */   
     public String getShortOutput()
     {
+        int result = evaluate();
         String str = "";
         str += getShortString() + "- ";
-        str += getRankString() + " (" + getHandValue() + ")";
+        str += handRanks[HandEvaluator.getCategory(result)] + " (" + HandEvaluator.getScore(result) + ")";
        return str;
     }
     
@@ -132,10 +168,10 @@ public class PokerHand extends Deck
     private int getNumMatches()
     {
         int count = 0;
-        for (int i = 0; i < deck.size()-1; i++)
-            for (int j = i+1; j < deck.size(); j++){
-                if (deck.get(i).getValue() == deck.get(j).getValue())
-                  if (deck.get(i).getValue() != 0)
+        for (int i = 0; i < getSize()-1; i++)
+            for (int j = i+1; j < getSize(); j++){
+                if (getCard(i).getValue() == getCard(j).getValue())
+                  if (getCard(i).getValue() != 0)
                     count++;
             }      
         return count;
@@ -269,12 +305,12 @@ public class PokerHand extends Deck
      */
     public boolean isFlush()
     {
-        for (Card card: deck)
+        for (Card card: getRemaining())
           //System.out.print(card.getSuit());
           if (card.getValue() == 0)
              return false;        
-        for (int i = 1; i < deck.size(); i++)
-            if (!(deck.get(i).getSuit().equals(deck.get(0).getSuit())))
+        for (int i = 1; i < getSize(); i++)
+            if (!(getCard(i).getSuit().equals(getCard(0).getSuit())))
                 return false;
         return true;
     }
@@ -292,7 +328,7 @@ public class PokerHand extends Deck
      */
     private ArrayList<Card> sortByValue()
     {
-        ArrayList<Card> sorted = new ArrayList<Card>(deck);
+        ArrayList<Card> sorted = new ArrayList<Card>(getRemaining());
         Card key;
         int i, j;
         for (i = 1; i < sorted.size(); i++)
@@ -1,4 +1,6 @@
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
 
 public class PokerSquare
 { 
@@ -8,20 +10,134 @@ public class PokerSquare
   /** A one-dimensional array to hold the ten poker hands of the square */
   private PokerHand[] PokerHands;
   
-  /** The score value of the square */
+  /** The score value of the square, kept up to date by setCard */
   private int score;
   
+  /*
+   * Per-line state, updated by setCard.  Lines 0-4 are the rows of the square,
+   * and lines 5-9 are the columns, the same as the PokerHands array.
+   */
+  
+  /** A 4-bit count for each card value in the line, value v at bits 4v-4v+3 */
+  private long[] rankCounts;
+  
+  /** Which card values are in the line, value v at bit v */
+  private int[] rankBits;
+  
+  /** A 4-bit count for each suit in the line, using HandEvaluator's suit order */
+  private int[] suitCounts;
+  
+  /** The number of non-blank cards in the line */
+  private int[] filled;
+  
+  /** The number of matching pairs of cards, counted as in PokerHand */
+  private int[] matches;
+  
+  /** The number of cards in the line that HandEvaluator can't pack */
+  private int[] foreign;
+  
+  /** The category and score of the line, packed as in HandEvaluator */
+  private int[] result;
+  
+  /** The Metrics counts of the thread that last put a card down, not copied */
+  private Metrics.Counts counts;
+  
+  /*
+   * The undo stack for place, one entry per card placed and not yet undone.
+   */
+  
+  /** The most moves the undo stack holds, one for each space */
+  public static final int MAX_UNDO = 25;
+  
+  /** The space, row-major, and the card that was there before */
+  private int[] undoCells;
+  private Card[] undoCards;
+  
+  /** The number of moves on the undo stack */
+  private int undoDepth;
+  
+  /**
+   * Publishes moves to subscribers, made by the first subscribe or
+   * closeEvents.  Volatile, so a subscribe from another thread is seen by the
+   * game's thread.
+   */
+  private volatile SquareEventPublisher events;
+  
 
+  /**
+   * The PokerSquare constructor instantiates an empty square, with every
+   * space holding the blank card.
+   */
   public PokerSquare()
   {
     square = new Card[5][5];
-     Deck pokerDeck = new Deck();
      score = 0;        
      PokerHands = new PokerHand[10];            
-     pokerDeck.shuffle();    
+     rankCounts = new long[10];
+     rankBits = new int[10];
+     suitCounts = new int[10];
+     filled = new int[10];
+     matches = new int[10];
+     foreign = new int[10];
+     result = new int[10];
+     undoCells = new int[MAX_UNDO];
+     undoCards = new Card[MAX_UNDO];
      for (int i = 0; i < 5; i++)
        for (int j = 0; j < 5; j++)
-         square[i][j] = new Card ("Blank", "Blanks", 0, " ", " ");
+         square[i][j] = Card.BLANK;
+  }
+  
+  /**
+   * Empties the square, putting the blank card back in every space, so it can
+   * be reused for another game.  The undo stack is emptied too.  Subscribers
+   * get a SquareEvent.Cleared.
+   */
+  public void clear()
+  {
+     SquareEventPublisher events = this.events;
+     if (events != null && events.hasSubscribers())
+       events.publish(List.of(new SquareEvent.Cleared(score)));
+     score = 0;
+     undoDepth = 0;
+     for (int i = 0; i < 5; i++)
+       for (int j = 0; j < 5; j++)
+         square[i][j] = Card.BLANK;
+     for (int line = 0; line < 10; line++)
+     {
+       rankCounts[line] = 0;
+       rankBits[line] = 0;
+       suitCounts[line] = 0;
+       filled[line] = 0;
+       matches[line] = 0;
+       foreign[line] = 0;
+       result[line] = 0;
+     }
+  }
+  
+  /**
+   * Copies another square, including its line state and score, so the copy
+   * can be played on without touching the original.  The copy starts with
+   * nothing to undo, since the original's tries are the original's to take
+   * back.
+   * 
+   * @param other the square to copy
+   */
+  public PokerSquare(PokerSquare other)
+  {
+     square = new Card[5][5];
+     for (int i = 0; i < 5; i++)
+       square[i] = other.square[i].clone();
+     score = other.score;
+     PokerHands = new PokerHand[10];
+     rankCounts = other.rankCounts.clone();
+     rankBits = other.rankBits.clone();
+     suitCounts = other.suitCounts.clone();
+     filled = other.filled.clone();
+     matches = other.matches.clone();
+     foreign = other.foreign.clone();
+     result = other.result.clone();
+     undoCells = new int[MAX_UNDO];
+     undoCards = new Card[MAX_UNDO];
   }
   
    /**
@@ -33,14 +149,12 @@ public class PokerSquare
    */
   public PokerSquare(Deck foo)
   {  
-     square = new Card[5][5];
+     this();
      Deck pokerDeck = new Deck();
-     score = 0;        
-     PokerHands = new PokerHand[10];            
      pokerDeck.shuffle();    
      for (int i = 0; i < 5; i++)
        for (int j = 0; j < 5; j++)
-         square[i][j] = pokerDeck.removeCard(0);
+         move(i, j, pokerDeck.removeCard(0));
   }
   
   /**
@@ -48,6 +162,9 @@ public class PokerSquare
    * 
    * Hands 0-4 are generated from the rows of the square, while
    * hands 5-9 are generated from the columns of the square.
+   * <p>
+   * The score and summary no longer need this, since setCard keeps every
+   * line up to date.  It is only here for code that wants the PokerHands.
    */
   public void buildHands()
   {
@@ -83,28 +200,408 @@ public class PokerSquare
    */
   public String getSummary()
   {
-      String str = "";
-      str += "ROWS                                  COLUMNS\n";
-      str += "--------------                        --------------\n";
-      for (int i = 0; i < 5; i++)
-      {
-         str += String.format("%-38s",PokerHands[i].getShortOutput());
-         str += String.format("%-38s",PokerHands[i+5].getShortOutput());
-         str += "\n";
-      }        
-      str += "\nScore: " + getScore();
-      return str;
+      return BoardRenderer.toString(this, BoardRenderer::writeSummary);
+  }
+  
+  /**
+   * @return the k-th card of a line: across a row, or down a column
+   */
+  private Card getLineCard(int line, int k)
+  {
+      return line < 5 ? square[line][k] : square[k][line - 5];
   }
   
+  /**
+   * Places a card on the square, replacing whatever was there.
+   * <p>
+   * Only the card's row and column can change, so only those two lines are
+   * updated, and the score changes by the difference in their values.
+   * 
+   * @param i the row, 0-4
+   * @param j the column, 0-4
+   * @param card the card to place, or a blank card to empty the space
+   */
   public void setCard(int i, int j, Card card)
   {
+    Card old = square[i][j];
+    int rowBefore = result[i], columnBefore = result[j + 5];
+    int change = move(i, j, card);
+    if (Metrics.ENABLED)
+      counts().scorings++;
+    SquareEventPublisher events = this.events;
+    if (events != null && events.hasSubscribers())
+      publishMove(events, i, j, card, old, rowBefore, columnBefore, change);
+  }
+  
+  /**
+   * Puts a card in a space and updates its row and column, without telling
+   * any subscribers.
+   * 
+   * @return the change in the score
+   */
+  private int move(int i, int j, Card card)
+  {
+    Card old = square[i][j];
     square[i][j] = card;
+    int oldCode = old.getCode(), newCode = card.getCode();
+    removeFromLine(i, oldCode);
+    removeFromLine(j + 5, oldCode);
+    addToLine(i, newCode);
+    addToLine(j + 5, newCode);
+    int change = updateLine(i) + updateLine(j + 5);
+    score += change;
+    return change;
+  }
+  
+  /** @return the Metrics counts of the thread moving cards, looked up again only when that changes */
+  private Metrics.Counts counts()
+  {
+    Metrics.Counts counts = Metrics.counts(this.counts);
+    if (counts != this.counts)
+      this.counts = counts;
+    return counts;
+  }
+  
+  /**
+   * Places a card so that it can be taken back with {@link #undo}.
+   * <p>
+   * This is setCard plus an entry on a fixed undo stack, so a search can try
+   * a card, look at the score, and back out without copying anything and
+   * without allocating anything.  Moves are undone last first, and as many
+   * as {@link #MAX_UNDO} can be waiting, one for each space.
+   * <p>
+   * place and undo are for trying moves, so they aren't published to
+   * subscribers.  A policy can probe the square a game is being played on
+   * without spectators seeing anything but the move it makes in the end.
+   * 
+   * @param cell the space, 0-24 in row-major order
+   * @param card the card to place
+   * @throws IllegalStateException if the undo stack is full
+   */
+  public void place(int cell, Card card)
+  {
+    if (undoDepth == MAX_UNDO)
+      throw new IllegalStateException("already " + MAX_UNDO + " moves to undo");
+    int i = cell / 5, j = cell % 5;
+    undoCells[undoDepth] = cell;
+    undoCards[undoDepth] = square[i][j];
+    undoDepth++;
+    move(i, j, card);
+    if (Metrics.ENABLED)
+      counts().scorings++;
+  }
+  
+  /**
+   * Takes back the last card placed with {@link #place}, putting back
+   * whatever was in its space before.  The row and column are worked out
+   * again from the cards, so any setCard in between is taken into account.
+   * 
+   * @throws IllegalStateException if there is nothing to undo
+   */
+  public void undo()
+  {
+    if (undoDepth == 0)
+      throw new IllegalStateException("nothing to undo");
+    undoDepth--;
+    int cell = undoCells[undoDepth];
+    move(cell / 5, cell % 5, undoCards[undoDepth]);
+    undoCards[undoDepth] = null;
+  }
+  
+  /**
+   * @return the number of moves that {@link #undo} can take back
+   */
+  public int getUndoDepth()
+  {
+    return undoDepth;
+  }
+  
+  /**
+   * Takes a snapshot of the cards on the square, to restore later or to
+   * build a copy from on another thread.
+   * 
+   * @return the snapshot
+   * @throws IllegalArgumentException if a card isn't from the default deck
+   * @see BoardSnapshot
+   */
+  public BoardSnapshot snapshot()
+  {
+    return new BoardSnapshot(square);
+  }
+  
+  /**
+   * Puts the square back the way a snapshot found it.
+   * <p>
+   * Only the spaces that differ are changed, so going back to a position a
+   * few moves away costs about as much as a few setCards, and each space
+   * changed counts as a scoring in Metrics.  The undo stack is emptied,
+   * since the moves on it may no longer lead here.
+   * <p>
+   * Subscribers get the whole change as one move, as SquareEvent describes.
+   * They never saw the cards placed for a try, so when anyone is listening
+   * those are taken back first, and every CardPlaced replaces a card that
+   * was published.
+   * 
+   * @param snapshot the snapshot
+   */
+  public void restore(BoardSnapshot snapshot)
+  {
+    SquareEventPublisher events = this.events;
+    List<SquareEvent> move = null;
+    int[] linesBefore = null;
+    int scoreBefore = 0;
+    boolean wasFull = false;
+    if (events != null && events.hasSubscribers())
+    {
+      while (undoDepth > 0)
+        undo();
+      move = new ArrayList<>();
+      linesBefore = result.clone();
+      scoreBefore = score;
+      wasFull = isFull();
+    }
+    undoDepth = 0;
+    for (int cell = 0; cell < 25; cell++)
+    {
+      int i = cell / 5, j = cell % 5;
+      Card card = snapshot.getCard(cell), old = square[i][j];
+      if (old == card)
+        continue;
+      move(i, j, card);
+      if (Metrics.ENABLED)
+        counts().scorings++;
+      if (move != null)
+        move.add(new SquareEvent.CardPlaced(i, j, card, old));
+    }
+    if (move == null || move.isEmpty())
+      return;
+    for (int line = 0; line < 10; line++)
+      addLineChange(move, line, linesBefore[line]);
+    if (score != scoreBefore)
+      move.add(new SquareEvent.ScoreChanged(score - scoreBefore, score));
+    if (!wasFull && isFull())
+      move.add(new SquareEvent.GameOver(score));
+    events.publish(List.copyOf(move));
+  }
+  
+  /**
+   * Lets a subscriber follow the game, one move at a time.
+   * <p>
+   * Every setCard from now on is published to the subscriber as a list of
+   * SquareEvents, in the order SquareEvent describes.  Moves are delivered on
+   * the common fork/join pool, so subscribers never hold up the game, and a
+   * subscriber that falls more than a few hundred moves behind is dropped
+   * with an IllegalStateException; see SquareEventPublisher.  clear and
+   * restore are published too, and a copy of the square has no subscribers.  A policy
+   * that tries a card in a space and takes it back with setCard publishes
+   * both moves, so spectators are best subscribed to a square that only the
+   * game itself places cards on.
+   * <p>
+   * Until the first subscriber arrives, and whenever there are none, setCard
+   * does no more than check a field.
+   * 
+   * @param subscriber the subscriber
+   */
+  public void subscribe(Flow.Subscriber<? super List<SquareEvent>> subscriber)
+  {
+    publisher().subscribe(subscriber);
+  }
+  
+  /**
+   * Tells every subscriber there will be no more moves, with onComplete.
+   * Later subscribers get onComplete straight away.
+   */
+  public void closeEvents()
+  {
+    publisher().close();
+  }
+  
+  /** @return the publisher, made under the square's lock the first time, so there is only ever one */
+  private SquareEventPublisher publisher()
+  {
+    SquareEventPublisher events = this.events;
+    if (events == null)
+      synchronized (this)
+      {
+        events = this.events;
+        if (events == null)
+          this.events = events = new SquareEventPublisher();
+      }
+    return events;
+  }
+  
+  /** Describes a move and hands it to the subscribers */
+  private void publishMove(SquareEventPublisher events, int i, int j, Card card, Card old,
+                           int rowBefore, int columnBefore, int change)
+  {
+    List<SquareEvent> move = new ArrayList<>(5);
+    move.add(new SquareEvent.CardPlaced(i, j, card, old));
+    addLineChange(move, i, rowBefore);
+    addLineChange(move, j + 5, columnBefore);
+    if (change != 0)
+      move.add(new SquareEvent.ScoreChanged(change, score));
+    if (old.getValue() == 0 && card.getValue() != 0 && isFull())
+      move.add(new SquareEvent.GameOver(score));
+    events.publish(List.copyOf(move));
+  }
+  
+  private void addLineChange(List<SquareEvent> move, int line, int before)
+  {
+    int category = HandEvaluator.getCategory(result[line]);
+    if (category != HandEvaluator.getCategory(before))
+      move.add(new SquareEvent.LineChanged(line, HandEvaluator.getCategory(before), category,
+                                           HandEvaluator.getScore(result[line])));
+  }
+  
+  /**
+   * @return true if no space holds a blank card
+   */
+  public boolean isFull()
+  {
+    for (int i = 0; i < 5; i++)
+      for (int j = 0; j < 5; j++)
+        if (isEmpty(i, j))
+          return false;
+    return true;
+  }
+  
+  /** Takes an encoded card out of a line's counts */
+  private void removeFromLine(int line, int code)
+  {
+    if (code < 0)
+    {
+      foreign[line]--;
+      return;
+    }
+    if (code == HandEvaluator.BLANK)
+      return;
+    int shift = (code & HandEvaluator.VALUE_MASK) << 2;
+    rankCounts[line] -= 1L << shift;
+    int left = (int) (rankCounts[line] >>> shift) & 0xF;
+    matches[line] -= left;
+    if (left == 0)
+      rankBits[line] &= ~(1 << (code & HandEvaluator.VALUE_MASK));
+    suitCounts[line] -= 1 << (Integer.numberOfTrailingZeros(code >>> 4) << 2);
+    filled[line]--;
+  }
+  
+  /** Adds an encoded card to a line's counts */
+  private void addToLine(int line, int code)
+  {
+    if (code < 0)
+    {
+      foreign[line]++;
+      return;
+    }
+    if (code == HandEvaluator.BLANK)
+      return;
+    int shift = (code & HandEvaluator.VALUE_MASK) << 2;
+    matches[line] += (int) (rankCounts[line] >>> shift) & 0xF;
+    rankCounts[line] += 1L << shift;
+    rankBits[line] |= 1 << (code & HandEvaluator.VALUE_MASK);
+    suitCounts[line] += 1 << (Integer.numberOfTrailingZeros(code >>> 4) << 2);
+    filled[line]++;
+  }
+  
+  /**
+   * Works out a line's category from its counts.
+   * <p>
+   * A straight needs five distinct values in a row.  A blank counts as value 0,
+   * just like it does when PokerHand sorts the cards.  A flush needs five cards
+   * of one suit.
+   * 
+   * @return the change in the line's value
+   */
+  private int updateLine(int line)
+  {
+    int before = HandEvaluator.getScore(result[line]);
+    if (foreign[line] > 0)
+    {
+      PokerHand hand = new PokerHand(getLineCard(line, 0), getLineCard(line, 1),
+                                     getLineCard(line, 2), getLineCard(line, 3), getLineCard(line, 4));
+      result[line] = HandEvaluator.result(hand.getRankInt());
+    }
+    else
+    {
+      int values = rankBits[line] | (filled[line] < 5 ? 1 : 0);
+      int straight = filled[line] >= 4 && matches[line] == 0
+                     && (values >>> Integer.numberOfTrailingZeros(values)) == 0x1F ? 4 : 0;
+      int suits = suitCounts[line];
+      int flush = filled[line] == 5
+                  && (suits >>> (Integer.numberOfTrailingZeros(suits) & ~3)) == 5 ? 5 : 0;
+      result[line] = HandEvaluator.classify(matches[line], straight, flush);
+    }
+    return HandEvaluator.getScore(result[line]) - before;
+  }
+  
+  /**
+   * @return the number of non-blank cards in a line
+   */
+  int getLineFilled(int line)
+  {
+    return filled[line];
+  }
+  
+  /**
+   * @return which card values are in a line, value v at bit v.  Blanks and
+   *         cards HandEvaluator can't pack aren't included.
+   */
+  int getLineRankBits(int line)
+  {
+    return rankBits[line];
+  }
+  
+  /**
+   * @return the number of matching pairs of cards in a line, counted as in PokerHand
+   */
+  int getLineMatches(int line)
+  {
+    return matches[line];
+  }
+  
+  /**
+   * @return a 4-bit count of each suit in a line, using HandEvaluator's suit order.
+   *         Cards HandEvaluator can't pack aren't counted.
+   */
+  int getLineSuitCounts(int line)
+  {
+    return suitCounts[line];
+  }
+  
+  /**
+   * Provides the category of one line of the square.
+   * 
+   * @param line 0-4 for the rows, 5-9 for the columns
+   * @return a number from 0-8, as in PokerHand.getRankInt
+   */
+  public int getLineCategory(int line)
+  {
+    return HandEvaluator.getCategory(result[line]);
+  }
+  
+  /**
+   * Provides the value of one line of the square under the English scoring system.
+   * 
+   * @param line 0-4 for the rows, 5-9 for the columns
+   * @return a number from 0-30, as in PokerHand.getHandValue
+   */
+  public int getLineValue(int line)
+  {
+    return HandEvaluator.getScore(result[line]);
   }
   
   public Card getCard(int i, int j)
   {
    return square[i][j];
   }
+  
+  /**
+   * @return true if the space at row i, column j holds a blank card.
+   */
+  public boolean isEmpty(int i, int j)
+  {
+   return square[i][j].getValue() == 0;
+  }
 
   /**
    * Provides the names of each poker hand, separated by line.
@@ -118,10 +615,7 @@ public class PokerSquare
    */
   public String getHandNames()
   {
-      String str = "";
-      for (PokerHand hand : PokerHands)
-        str += hand.getRankString() + "\n";
-      return str;
+      return BoardRenderer.toString(this, BoardRenderer::writeHandNames);
   }      
   
   /**
@@ -140,36 +634,18 @@ public class PokerSquare
    */
   public String toString()
   {
-      String ret = "";
-      ret += "    1    2    3    4    5\n";   
-      for (int i = 0; i < 5; i++)
-      {
-          ret += (char)(i+65) + " ";
-          for (int j = 0; j < 5; j++)
-              ret += "[" + square[i][j].getShortString() + "] ";
-          ret += "\n";
-
-      }
-      return ret;
+      return BoardRenderer.toString(this, BoardRenderer::writeBoard);
   }
   
   /**
    * Provides the current numeric score of the square.
    * <p>
-   * It resets score to 0, traverses through each hand,
-   * and adds that hand's value to the score.
-   * <p>
-   * Then it returns the score.
+   * The score is kept as a running total by setCard, so this is just a read.
    * 
    * @return the square's score.
    */
   public int getScore()
   {
-      score = 0;
-      for (PokerHand hand : PokerHands)
-      {
-          score += hand.getHandValue();
-      }
       return score;
   }
 }
@@ -0,0 +1,34 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A placement policy that puts each card in a random empty space.
+ * <p>
+ * This is the baseline every other policy should beat.  Until a game is
+ * started with a seed it uses the thread's own generator.
+ */
+public class RandomPolicy implements PlacementPolicy
+{
+    /** Mixed into the game seed so the policy's choices don't mirror the shuffle */
+    private static final long SALT = 0x9E3779B97F4A7C15L;
+
+    private RandomGenerator random;
+
+    public void startGame(long seed)
+    {
+        random = new SplittableRandom(seed ^ SALT);
+    }
+
+    public int chooseCell(PokerSquare square, Card next, Deck remaining)
+    {
+        RandomGenerator random = this.random != null ? this.random : ThreadLocalRandom.current();
+        int chosen = -1;
+        int seen = 0;
+        // pick uniformly among the empty spaces without collecting them first
+        for (int cell = 0; cell < 25; cell++)
+            if (square.isEmpty(cell / 5, cell % 5) && random.nextInt(++seen) == 0)
+                chosen = cell;
+        return chosen;
+    }
+}
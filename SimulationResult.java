@@ -0,0 +1,183 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The totals from a batch of simulated games: how the final scores were spread,
+ * and how often each kind of hand was made.
+ * <p>
+ * Results from different threads, or different runs, can be combined with
+ * {@link #merge}, so each thread keeps its own and nothing is shared while
+ * the games are being played.  Results from other processes can be sent
+ * over with {@link #writeTo} and {@link #readFrom}.
+ */
+public class SimulationResult
+{
+    /** The highest score a square could ever have: ten Straight Flushes */
+    public static final int MAX_SCORE = 300;
+
+    /** The number of games played */
+    private long games;
+
+    /** scores[s] is the number of games that finished with score s */
+    private final long[] scores = new long[MAX_SCORE + 1];
+
+    /** categories[c] is the number of rows and columns that finished as category c */
+    private final long[] categories = new long[9];
+
+    /** Wall-clock time spent playing, in nanoseconds */
+    private long nanos;
+
+    /**
+     * Records one finished game.
+     *
+     * @param square the square at the end of the game
+     */
+    public void add(PokerSquare square)
+    {
+        games++;
+        scores[square.getScore()]++;
+        for (int line = 0; line < 10; line++)
+            categories[square.getLineCategory(line)]++;
+    }
+
+    /**
+     * Adds another result's totals to this one.
+     *
+     * @param other the result to add
+     */
+    public void merge(SimulationResult other)
+    {
+        games += other.games;
+        for (int s = 0; s <= MAX_SCORE; s++)
+            scores[s] += other.scores[s];
+        for (int c = 0; c < categories.length; c++)
+            categories[c] += other.categories[c];
+    }
+
+    /**
+     * Writes the totals out, for another process to read back with {@link #readFrom}.
+     *
+     * @param out where to write them
+     * @throws IOException if they can't be written
+     */
+    public void writeTo(DataOutput out) throws IOException
+    {
+        out.writeLong(games);
+        out.writeLong(nanos);
+        for (long count : scores)
+            out.writeLong(count);
+        for (long count : categories)
+            out.writeLong(count);
+    }
+
+    /**
+     * Reads totals written by {@link #writeTo}.
+     *
+     * @param in where to read them from
+     * @return the result
+     * @throws IOException if they can't be read
+     */
+    public static SimulationResult readFrom(DataInput in) throws IOException
+    {
+        SimulationResult result = new SimulationResult();
+        result.games = in.readLong();
+        result.nanos = in.readLong();
+        for (int s = 0; s <= MAX_SCORE; s++)
+            result.scores[s] = in.readLong();
+        for (int c = 0; c < result.categories.length; c++)
+            result.categories[c] = in.readLong();
+        return result;
+    }
+
+    /** @return the number of games played */
+    public long getGames() {return games;}
+
+    /** @return the number of games that finished with a given score */
+    public long getScoreCount(int score) {return scores[score];}
+
+    /** @return the number of rows and columns that finished as a given category */
+    public long getCategoryCount(int category) {return categories[category];}
+
+    /** @return the wall-clock time spent playing, in nanoseconds */
+    public long getNanos() {return nanos;}
+
+    /**
+     * Sets the wall-clock time the games took.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    public void setNanos(long nanos) {this.nanos = nanos;}
+
+    /** @return the average final score */
+    public double getMean()
+    {
+        long total = 0;
+        for (int s = 0; s <= MAX_SCORE; s++)
+            total += s * scores[s];
+        return games == 0 ? 0 : (double) total / games;
+    }
+
+    /** @return the standard deviation of the final score */
+    public double getStandardDeviation()
+    {
+        double mean = getMean(), sum = 0;
+        for (int s = 0; s <= MAX_SCORE; s++)
+            sum += scores[s] * (s - mean) * (s - mean);
+        return games < 2 ? 0 : Math.sqrt(sum / (games - 1));
+    }
+
+    /**
+     * Finds a score percentile from the histogram.
+     *
+     * @param p a fraction from 0 to 1, such as 0.5 for the median
+     * @return the lowest score that at least that fraction of games reached or fell below
+     */
+    public int getPercentile(double p)
+    {
+        long target = (long) Math.ceil(p * games), seen = 0;
+        for (int s = 0; s <= MAX_SCORE; s++)
+        {
+            seen += scores[s];
+            if (seen >= target && seen > 0)
+                return s;
+        }
+        return MAX_SCORE;
+    }
+
+    /** @return games per second of wall-clock time */
+    public double getGamesPerSecond()
+    {
+        return nanos == 0 ? 0 : games * 1e9 / nanos;
+    }
+
+    /**
+     * Provides a report of the results.
+     * <p>
+     * Sample output:
+     * <pre>
+     * Games: 1000000  (72883 games/s)
+     * Score: mean 7.63, sd 4.12, min 0, median 7, p99 21, max 58
+     * High Card         50.16%
+     * One Pair          42.25%
+     * ...</pre>
+     *
+     * @return the report
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Games: %d  (%.0f games/s)%n", games, getGamesPerSecond()));
+        int max = 0;
+        for (int s = 0; s <= MAX_SCORE; s++)
+            if (scores[s] > 0)
+                max = s;
+        sb.append(String.format("Score: mean %.2f, sd %.2f, min %d, median %d, p99 %d, max %d%n",
+                  getMean(), getStandardDeviation(), getPercentile(0), getPercentile(0.5),
+                  getPercentile(0.99), max));
+        for (int c = 0; c < categories.length; c++)
+            sb.append(String.format("%-16s %6.2f%%%n", HandEvaluator.HAND_RANKS[c],
+                      games == 0 ? 0 : 100.0 * categories[c] / (games * 10)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Plays complete games of PokerSquare without anyone at the console.
+ * <p>
+ * Each game deals a shuffled Deck, asks a PlacementPolicy where to put each of
+ * the 25 cards, and records the finished square in a SimulationResult.  The games
+ * are split evenly across threads up front.  Every thread has its own policy,
+ * deck, square and result, and the results are only merged once the threads are
+ * done, so there is nothing shared to fight over while the games are running.
+ * <p>
+ * Game <i>g</i> of a run is shuffled with seed <code>firstSeed + g</code>, so any
+ * game can be replayed exactly with {@link #playGame(PlacementPolicy, PokerSquare, long)},
+ * and a whole run can be repeated by passing the same first seed.
+ * <p>
+ * Finished games can also be written to a {@link GameLog}, to be replayed or
+ * studied later.
+ * <p>
+ * From the command line:
+ * <pre>java Simulator [games] [threads] [[book:]random|greedy|odds|value|advisor|endgame] [firstSeed] [log file]</pre>
+ */
+public class Simulator
+{
+    /** Makes one policy for each thread */
+    private final Supplier<PlacementPolicy> policies;
+
+    /** The number of threads to play on */
+    private final int threads;
+
+    /** Where finished games are recorded, or null */
+    private GameLog.Writer log;
+
+    /**
+     * Creates a simulator.
+     *
+     * @param policies makes a policy for each thread
+     * @param threads the number of threads to play on
+     */
+    public Simulator(Supplier<PlacementPolicy> policies, int threads)
+    {
+        this.policies = policies;
+        this.threads = threads;
+    }
+
+    /**
+     * Records every game played from now on.
+     *
+     * @param log where to write the games, or null to stop recording
+     */
+    public void setLog(GameLog.Writer log) {this.log = log;}
+
+    /**
+     * Plays a number of games from a random first seed and collects the results.
+     *
+     * @param games how many games to play
+     * @return the combined results of all threads
+     */
+    public SimulationResult run(long games)
+    {
+        return run(ThreadLocalRandom.current().nextLong(), games);
+    }
+
+    /**
+     * Plays a number of seeded games and collects the results.
+     *
+     * @param firstSeed the seed of the first game; game g uses firstSeed + g
+     * @param games how many games to play
+     * @return the combined results of all threads
+     */
+    public SimulationResult run(long firstSeed, long games)
+    {
+        SimulationResult[] results = new SimulationResult[threads];
+        List<Callable<Void>> tasks = new ArrayList<>();
+        long start = System.nanoTime();
+        long seed = firstSeed;
+        for (int t = 0; t < threads; t++)
+        {
+            long share = games / threads + (t < games % threads ? 1 : 0);
+            long from = seed;
+            seed += share;
+            SimulationResult result = results[t] = new SimulationResult();
+            PlacementPolicy policy = policies.get();
+            GameLog.Writer log = this.log;
+            tasks.add(() -> {
+                play(policy, from, share, result, log);
+                return null;
+            });
+        }
+
+        AtomicInteger named = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads,
+            r -> new Thread(r, "simulator-" + named.getAndIncrement()));
+        try
+        {
+            // a thread that failed would leave its result half filled in, so that fails the run
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for simulator threads", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("a simulated game failed", e.getCause());
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        SimulationResult total = new SimulationResult();
+        for (SimulationResult result : results)
+            total.merge(result);
+        total.setNanos(System.nanoTime() - start);
+        return total;
+    }
+
+    /** Plays a thread's share of the games */
+    private static void play(PlacementPolicy policy, long firstSeed, long games, SimulationResult result,
+                             GameLog.Writer log)
+    {
+        PokerSquare square = new PokerSquare();
+        Deck deck = new Deck();
+        int[] cardIds = log != null ? new int[25] : null;
+        int[] cells = log != null ? new int[25] : null;
+        for (long g = 0; g < games; g++)
+        {
+            long seed = firstSeed + g;
+            startGame(policy, square, deck, seed);
+            playGame(policy, square, deck, cardIds, cells);
+            if (log != null)
+                log.append(seed, cardIds, cells, square);
+            result.add(square);
+        }
+    }
+
+    /**
+     * Plays one seeded game from the start.  The same policy and seed always
+     * give the same game, as long as the policy seeds its choices in startGame.
+     *
+     * @param policy decides where each card goes
+     * @param square a square to play on.  It is cleared first, and holds the finished game afterwards.
+     * @param seed the seed to shuffle a new deck with
+     * @return the final score
+     */
+    public static int playGame(PlacementPolicy policy, PokerSquare square, long seed)
+    {
+        return playGame(policy, square, new Deck(), seed);
+    }
+
+    /**
+     * Plays one seeded game from the start, reusing a deck.
+     *
+     * @param policy decides where each card goes
+     * @param square a square to play on.  It is cleared first, and holds the finished game afterwards.
+     * @param deck a default deck, which is reset before it is shuffled
+     * @param seed the seed to shuffle the deck with
+     * @return the final score
+     */
+    public static int playGame(PlacementPolicy policy, PokerSquare square, Deck deck, long seed)
+    {
+        startGame(policy, square, deck, seed);
+        return playGame(policy, square, deck);
+    }
+
+    /** Resets and shuffles the deck, clears the square and tells the policy */
+    private static void startGame(PlacementPolicy policy, PokerSquare square, Deck deck, long seed)
+    {
+        deck.reset();
+        deck.shuffle(seed);
+        square.clear();
+        policy.startGame(seed);
+    }
+
+    /**
+     * Plays one game: deals 25 cards from the deck onto an empty square.
+     *
+     * @param policy decides where each card goes
+     * @param square an empty square, which holds the finished game afterwards
+     * @param deck a shuffled deck to deal from
+     * @return the final score
+     */
+    public static int playGame(PlacementPolicy policy, PokerSquare square, Deck deck)
+    {
+        return playGame(policy, square, deck, null, null);
+    }
+
+    /**
+     * Plays one game and notes every move, for a GameLog.
+     *
+     * @param policy decides where each card goes
+     * @param square an empty square, which holds the finished game afterwards
+     * @param deck a shuffled deck to deal from
+     * @param cardIds filled in with the id of each card dealt, or null
+     * @param cells filled in with the space each card went in, or null
+     * @return the final score
+     */
+    public static int playGame(PlacementPolicy policy, PokerSquare square, Deck deck, int[] cardIds, int[] cells)
+    {
+        // with metrics on, one move of each game is timed
+        int sampled = Metrics.ENABLED ? ThreadLocalRandom.current().nextInt(25) : -1;
+        for (int i = 0; i < 25; i++)
+        {
+            Card next = deck.dealCard();
+            boolean timed = i == sampled;
+            long bytes = 0, start = 0;
+            if (timed)
+            {
+                bytes = Metrics.allocatedBytes();
+                start = System.nanoTime();
+            }
+            int cell = policy.chooseCell(square, next, deck);
+            if (timed)
+                Metrics.DECISION_NANOS.record(System.nanoTime() - start);
+            square.setCard(cell / 5, cell % 5, next);
+            if (timed)
+                Metrics.MOVE_BYTES.record(Metrics.allocatedBytes() - bytes);
+            if (cardIds != null)
+            {
+                cardIds[i] = next.getId();
+                cells[i] = cell;
+            }
+        }
+        int score = square.getScore();
+        if (Metrics.ENABLED)
+            Metrics.GAMES.increment();
+        return score;
+    }
+
+    /**
+     * Makes the policy named on the command line.
+     *
+     * @param name <b>random</b>, <b>greedy</b>, <b>odds</b>, <b>value</b> (ValueFunction weights
+     *             from the file named by the property <code>pokersquares.valuefunction</code>,
+     *             value-function.bin by default), <b>advisor</b> (1 ms per card), or
+     *             <b>endgame</b> (greedy, then solved exactly for the last 4 cards).  Any of them
+     *             can be prefixed with <b>book:</b> to play the opening from the OpeningBook in
+     *             the file named by <code>pokersquares.openingbook</code>, opening-book.bin by default.
+     * @return a supplier of new policies of that kind
+     */
+    public static Supplier<PlacementPolicy> getPolicy(String name)
+    {
+        if (name.startsWith("book:"))
+        {
+            Supplier<PlacementPolicy> after = getPolicy(name.substring(5));
+            try
+            {
+                OpeningBook book = OpeningBook.load(
+                    Path.of(System.getProperty("pokersquares.openingbook", "opening-book.bin")));
+                return () -> new BookPolicy(book, after.get());
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException("can't load the opening book", e);
+            }
+        }
+        switch (name)
+        {
+            case "random":
+                return RandomPolicy::new;
+            case "greedy":
+                return GreedyPolicy::new;
+            case "odds":
+                return OddsPolicy::new;
+            case "advisor":
+                return () -> {
+                    PlacementAdvisor advisor = new PlacementAdvisor();
+                    return (square, next, remaining) ->
+                        advisor.getBestCell(square, next, remaining, System.nanoTime() + 1000000L);
+                };
+            case "value":
+                try
+                {
+                    ValueFunction function = ValueFunction.load(
+                        Path.of(System.getProperty("pokersquares.valuefunction", "value-function.bin")));
+                    return () -> new ValuePolicy(function);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException("can't load the value function", e);
+                }
+            case "endgame":
+                TranspositionTable table = new TranspositionTable(64 << 20);
+                return () -> new EndgameSolver(4, new GreedyPolicy(), table);
+            default:
+                throw new IllegalArgumentException("unknown policy: " + name);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String policy = args.length > 2 ? args[2] : "random";
+        long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : ThreadLocalRandom.current().nextLong();
+
+        Simulator simulator = new Simulator(getPolicy(policy), threads);
+        GameLog.Writer log = args.length > 4 ? new GameLog.Writer(Path.of(args[4])) : null;
+        simulator.setLog(log);
+        System.out.println("Policy: " + policy + ", threads: " + threads + ", first seed: " + firstSeed);
+        System.out.print(simulator.run(firstSeed, games));
+        if (log != null)
+            log.close();
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Something that happened to a PokerSquare, as published to the subscribers
+ * of {@link PokerSquare#subscribe}.
+ * <p>
+ * Each move is published as one list of events, in this order: the
+ * {@link CardPlaced}, a {@link LineChanged} for the row and for the column if
+ * their categories changed, a {@link ScoreChanged} if the score did, and a
+ * {@link GameOver} if the move filled the last space.  PokerSquare.clear is
+ * published as a list holding just a {@link Cleared}.  PokerSquare.restore
+ * is published as one move too: a CardPlaced for each space it changes,
+ * then the LineChanged, ScoreChanged and GameOver for the change as a whole.
+ * <p>
+ * A subscriber that is there from the start, with the square empty, can keep
+ * its own picture of the square from these alone.  One that subscribes later
+ * has missed the moves before, so it should start from a snapshot of the
+ * square, taken on the game's thread before any more moves are made.
+ * PokerSquare.place and undo aren't published at all, so a setCard made while
+ * cards are placed for a try describes lines that include them.  restore
+ * takes such cards back before it starts, so what it publishes replaces the
+ * cards that subscribers last saw.
+ */
+public abstract class SquareEvent
+{
+    private SquareEvent() {}
+
+    /**
+     * A card was put in a space, replacing whatever was there.
+     */
+    public static final class CardPlaced extends SquareEvent
+    {
+        private final int row, column;
+        private final Card card, replaced;
+
+        CardPlaced(int row, int column, Card card, Card replaced)
+        {
+            this.row = row;
+            this.column = column;
+            this.card = card;
+            this.replaced = replaced;
+        }
+
+        /** @return the row, 0-4 */
+        public int getRow() {return row;}
+
+        /** @return the column, 0-4 */
+        public int getColumn() {return column;}
+
+        /** @return the card placed, which may be a blank to empty the space */
+        public Card getCard() {return card;}
+
+        /** @return the card that was in the space before, usually a blank */
+        public Card getReplaced() {return replaced;}
+
+        public String toString()
+        {
+            return "placed " + card + " at " + PlacementAdvisor.getCoordinate(row * 5 + column);
+        }
+    }
+
+    /**
+     * A line's category changed.
+     */
+    public static final class LineChanged extends SquareEvent
+    {
+        private final int line, before, after, value;
+
+        LineChanged(int line, int before, int after, int value)
+        {
+            this.line = line;
+            this.before = before;
+            this.after = after;
+            this.value = value;
+        }
+
+        /** @return 0-4 for the rows, 5-9 for the columns */
+        public int getLine() {return line;}
+
+        /** @return the category before, 0-8, as in PokerHand.getRankInt */
+        public int getBefore() {return before;}
+
+        /** @return the category after */
+        public int getAfter() {return after;}
+
+        /** @return the line's value after, 0-30 */
+        public int getValue() {return value;}
+
+        public String toString()
+        {
+            return (line < 5 ? "row " + (char) ('A' + line) : "column " + (line - 4)) + ": "
+                   + HandEvaluator.HAND_RANKS[before] + " -> " + HandEvaluator.HAND_RANKS[after];
+        }
+    }
+
+    /**
+     * The square's score changed.
+     */
+    public static final class ScoreChanged extends SquareEvent
+    {
+        private final int change, score;
+
+        ScoreChanged(int change, int score)
+        {
+            this.change = change;
+            this.score = score;
+        }
+
+        /** @return how much the score went up, or down if negative */
+        public int getChange() {return change;}
+
+        /** @return the score after */
+        public int getScore() {return score;}
+
+        public String toString()
+        {
+            return "score " + (change > 0 ? "+" : "") + change + " = " + score;
+        }
+    }
+
+    /**
+     * The square was emptied for a new game.
+     */
+    public static final class Cleared extends SquareEvent
+    {
+        private final int score;
+
+        Cleared(int score)
+        {
+            this.score = score;
+        }
+
+        /** @return the score before the square was cleared */
+        public int getScore() {return score;}
+
+        public String toString()
+        {
+            return "cleared, score was " + score;
+        }
+    }
+
+    /**
+     * The last empty space was filled.
+     */
+    public static final class GameOver extends SquareEvent
+    {
+        private final int score;
+
+        GameOver(int score)
+        {
+            this.score = score;
+        }
+
+        /** @return the final score */
+        public int getScore() {return score;}
+
+        public String toString()
+        {
+            return "game over, score " + score;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Delivers a PokerSquare's moves to its subscribers, one list of SquareEvents
+ * per move.
+ * <p>
+ * This is a SubmissionPublisher, so each subscriber is fed on the executor,
+ * at the pace it asks for with Subscription.request, and the game thread only
+ * ever adds a move to each subscriber's buffer.  The buffers are bounded at
+ * {@link #BUFFER} moves.  A move is never waited for: if a subscriber's buffer
+ * is full, the move is dropped for that subscriber.  It still gets the moves
+ * that were already in its buffer, but when it reaches the gap it gets onError
+ * with an IllegalStateException instead, and is unsubscribed.  Once moves have
+ * been missed, the subscriber's picture of the square is wrong, so it's better
+ * told than left to guess.  Subscribers that keep up never notice the others.
+ */
+final class SquareEventPublisher
+{
+    /** The most moves waiting for one subscriber */
+    static final int BUFFER = 256;
+
+    private final SubmissionPublisher<Move> publisher;
+
+    /** The number of moves published so far */
+    private long moves;
+
+    SquareEventPublisher()
+    {
+        this(ForkJoinPool.commonPool());
+    }
+
+    SquareEventPublisher(Executor executor)
+    {
+        publisher = new SubmissionPublisher<>(executor, BUFFER);
+    }
+
+    /** @return true if anyone is listening, so a move is worth describing */
+    boolean hasSubscribers()
+    {
+        return publisher.hasSubscribers();
+    }
+
+    void subscribe(Flow.Subscriber<? super List<SquareEvent>> subscriber)
+    {
+        publisher.subscribe(new Guard(subscriber));
+    }
+
+    /** Hands one move to every subscriber without waiting for any of them */
+    void publish(List<SquareEvent> move)
+    {
+        publisher.offer(new Move(moves++, move), (subscriber, dropped) -> {
+            Guard guard = (Guard) subscriber;
+            if (guard.firstMissed == Long.MAX_VALUE)
+                guard.firstMissed = dropped.number;
+            return false;
+        });
+    }
+
+    /** Tells every subscriber there will be no more moves */
+    void close()
+    {
+        publisher.close();
+    }
+
+    /** A move and its place in the game */
+    private static final class Move
+    {
+        final long number;
+        final List<SquareEvent> events;
+
+        Move(long number, List<SquareEvent> events)
+        {
+            this.number = number;
+            this.events = events;
+        }
+    }
+
+    /**
+     * Passes everything on to a subscriber, up to the first move it missed,
+     * where it cancels the subscription and tells the subscriber why.
+     * All its calls come from the publisher one at a time, so the subscriber
+     * never hears from two threads at once.
+     */
+    private static final class Guard implements Flow.Subscriber<Move>
+    {
+        private final Flow.Subscriber<? super List<SquareEvent>> subscriber;
+        private Flow.Subscription subscription;
+
+        /** The number of the first move dropped, set by the publishing thread */
+        volatile long firstMissed = Long.MAX_VALUE;
+
+        /** True once the subscriber has had onError */
+        private boolean failed;
+
+        Guard(Flow.Subscriber<? super List<SquareEvent>> subscriber)
+        {
+            this.subscriber = subscriber;
+        }
+
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            this.subscription = subscription;
+            subscriber.onSubscribe(subscription);
+        }
+
+        public void onNext(Move move)
+        {
+            if (move.number >= firstMissed)
+            {
+                subscription.cancel();
+                fail(new IllegalStateException("fell more than " + BUFFER + " moves behind, and missed some"));
+            }
+            else
+                subscriber.onNext(move.events);
+        }
+
+        public void onError(Throwable error)
+        {
+            fail(error);
+        }
+
+        public void onComplete()
+        {
+            if (firstMissed != Long.MAX_VALUE)
+                fail(new IllegalStateException("fell more than " + BUFFER + " moves behind, and missed some"));
+            else if (!failed)
+                subscriber.onComplete();
+        }
+
+        /** Passes on the first error only */
+        private void fail(Throwable error)
+        {
+            if (!failed)
+            {
+                failed = true;
+                subscriber.onError(error);
+            }
+        }
+    }
+}
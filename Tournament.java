@@ -0,0 +1,304 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Ranks placement policies by playing them on the same deals.
+ * <p>
+ * Every policy still in the running plays game <i>g</i> with the deck shuffled
+ * by seed <code>firstSeed + g</code>, so each pair of policies sees exactly the
+ * same cards.  Comparing them game by game cancels out most of the luck of the
+ * deal: the paired differences spread far less than the scores themselves, so
+ * it takes far fewer games to tell two policies apart.
+ * <p>
+ * Games are played in rounds.  After each round, every pair of policies gets a
+ * confidence interval for its mean difference.  A policy is dropped as soon as
+ * some other policy's interval against it lies wholly above zero, so later
+ * rounds are spent only on the contests that are still close.  The tournament
+ * ends when one policy is left or the game limit is reached.
+ * <p>
+ * The intervals are checked after every round, so the default width is a
+ * cautious z = 3 rather than the usual 1.96.
+ * <p>
+ * From the command line:
+ * <pre>java Tournament [max games] [threads] [policy,policy,...] [firstSeed]</pre>
+ * with the policy names Simulator.getPolicy knows.
+ */
+public class Tournament
+{
+    /** Games per round, for each policy */
+    private static final int ROUND = 1000;
+
+    /** The fewest games before anyone can be dropped */
+    private static final int MIN_GAMES = 200;
+
+    private final String[] names;
+    private final List<Supplier<PlacementPolicy>> policies;
+    private final int threads;
+
+    /** How many standard errors an interval reaches each side of the mean */
+    private double z = 3;
+
+    /** Games each policy has played */
+    private final long[] games;
+
+    /** Sum of each policy's scores */
+    private final long[] totals;
+
+    /** For a pair (i, j): sums of score i - score j, and of its square, over their common games */
+    private final double[][] sums, squares;
+
+    /** Games each pair has played in common */
+    private final long[][] common;
+
+    /** The policy that beat each one, or -1 if it's still in */
+    private final int[] beatenBy;
+
+    /** The game count when each policy was dropped */
+    private final long[] droppedAt;
+
+    /**
+     * Creates a tournament.
+     *
+     * @param names what to call each policy
+     * @param policies makes a policy for each thread, one per name
+     * @param threads the number of threads to play on
+     */
+    public Tournament(List<String> names, List<Supplier<PlacementPolicy>> policies, int threads)
+    {
+        int n = names.size();
+        if (n != policies.size() || n < 2)
+            throw new IllegalArgumentException("need at least two policies, each with a name");
+        this.names = names.toArray(new String[0]);
+        this.policies = List.copyOf(policies);
+        this.threads = threads;
+        games = new long[n];
+        totals = new long[n];
+        sums = new double[n][n];
+        squares = new double[n][n];
+        common = new long[n][n];
+        beatenBy = new int[n];
+        droppedAt = new long[n];
+        Arrays.fill(beatenBy, -1);
+    }
+
+    /**
+     * @param z how many standard errors each confidence interval reaches either
+     *          side of the mean.  Bigger is safer and slower.
+     */
+    public void setZ(double z) {this.z = z;}
+
+    /**
+     * Plays rounds until one policy is left or the game limit is reached.
+     *
+     * @param firstSeed the seed of the first game; game g uses firstSeed + g
+     * @param maxGames the most games any policy plays
+     */
+    public void run(long firstSeed, long maxGames)
+    {
+        int n = names.length;
+        PlacementPolicy[][] players = new PlacementPolicy[threads][n];
+        for (int t = 0; t < threads; t++)
+            for (int e = 0; e < n; e++)
+                players[t][e] = policies.get(e).get();
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            long played = 0;
+            while (played < maxGames && countActive() > 1)
+            {
+                int round = (int) Math.min(ROUND, maxGames - played);
+                int[][] scores = playRound(pool, players, firstSeed + played, round);
+                played += round;
+                record(scores, round);
+                drop(played);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one round: every active policy plays the same run of seeds.
+     *
+     * @return scores[policy][game], or null rows for policies that are out
+     */
+    private int[][] playRound(ExecutorService pool, PlacementPolicy[][] players, long firstSeed, int round)
+    {
+        int n = names.length;
+        int[][] scores = new int[n][];
+        for (int e = 0; e < n; e++)
+            if (beatenBy[e] < 0)
+                scores[e] = new int[round];
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int from = 0;
+        for (int t = 0; t < threads; t++)
+        {
+            int share = round / threads + (t < round % threads ? 1 : 0);
+            int start = from, end = from + share;
+            from = end;
+            PlacementPolicy[] mine = players[t];
+            tasks.add(() -> {
+                PokerSquare square = new PokerSquare();
+                Deck deck = new Deck();
+                for (int e = 0; e < n; e++)
+                    if (scores[e] != null)
+                        for (int g = start; g < end; g++)
+                            scores[e][g] = Simulator.playGame(mine[e], square, deck, firstSeed + g);
+                return null;
+            });
+        }
+        try
+        {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while playing a round", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("a game failed", e.getCause());
+        }
+        return scores;
+    }
+
+    /** Adds a round's scores to the totals and the paired differences */
+    private void record(int[][] scores, int round)
+    {
+        int n = names.length;
+        for (int i = 0; i < n; i++)
+        {
+            if (scores[i] == null)
+                continue;
+            games[i] += round;
+            for (int g = 0; g < round; g++)
+                totals[i] += scores[i][g];
+            for (int j = 0; j < n; j++)
+            {
+                if (j == i || scores[j] == null)
+                    continue;
+                common[i][j] += round;
+                for (int g = 0; g < round; g++)
+                {
+                    int d = scores[i][g] - scores[j][g];
+                    sums[i][j] += d;
+                    squares[i][j] += (double) d * d;
+                }
+            }
+        }
+    }
+
+    /** Drops every policy that some other active policy now clearly beats */
+    private void drop(long played)
+    {
+        int n = names.length;
+        int[] beaten = new int[n];
+        Arrays.fill(beaten, -1);
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n && beatenBy[i] < 0 && beaten[i] < 0; j++)
+                if (j != i && beatenBy[j] < 0 && common[j][i] >= MIN_GAMES
+                    && getDifference(j, i) - z * getStandardError(j, i) > 0)
+                    beaten[i] = j;
+        // decided together, so the order of the policies doesn't matter
+        for (int i = 0; i < n; i++)
+            if (beaten[i] >= 0)
+            {
+                beatenBy[i] = beaten[i];
+                droppedAt[i] = played;
+            }
+    }
+
+    private int countActive()
+    {
+        int active = 0;
+        for (int b : beatenBy)
+            if (b < 0)
+                active++;
+        return active;
+    }
+
+    /** @return the mean of score i - score j over the games they both played */
+    public double getDifference(int i, int j)
+    {
+        return common[i][j] == 0 ? 0 : sums[i][j] / common[i][j];
+    }
+
+    /** @return the standard error of {@link #getDifference} */
+    public double getStandardError(int i, int j)
+    {
+        long c = common[i][j];
+        if (c < 2)
+            return Double.POSITIVE_INFINITY;
+        double mean = sums[i][j] / c;
+        double variance = Math.max(0, (squares[i][j] - c * mean * mean) / (c - 1));
+        return Math.sqrt(variance / c);
+    }
+
+    /** @return a policy's mean score */
+    public double getMean(int i)
+    {
+        return games[i] == 0 ? 0 : (double) totals[i] / games[i];
+    }
+
+    /** @return the policy that knocked policy i out, or -1 if it's still in */
+    public int getBeatenBy(int i) {return beatenBy[i];}
+
+    /** @return the standings, best mean first, with each policy's pairings */
+    public String toString()
+    {
+        int n = names.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Double.compare(getMean(b), getMean(a)));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-12s %8s %8s  %s%n", "Policy", "Games", "Mean", "Result"));
+        for (int i : order)
+            sb.append(String.format("%-12s %8d %8.2f  %s%n", names[i], games[i], getMean(i),
+                      beatenBy[i] < 0 ? "still in"
+                      : "beaten by " + names[beatenBy[i]] + " after " + droppedAt[i] + " games"));
+        sb.append(String.format("%nPaired differences, mean +/- %.2f standard errors:%n", z));
+        for (int a = 0; a < n; a++)
+            for (int b = a + 1; b < n; b++)
+            {
+                int i = order[a], j = order[b];
+                if (common[i][j] > 0)
+                    sb.append(String.format("%-12s - %-12s %+8.3f +/- %.3f  (%d games)%n", names[i], names[j],
+                              getDifference(i, j), z * getStandardError(i, j), common[i][j]));
+            }
+        return sb.toString();
+    }
+
+    public static void main(String[] args)
+    {
+        long maxGames = args.length > 0 ? Long.parseLong(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String[] entrants = (args.length > 2 ? args[2] : "random,greedy,odds").split(",");
+        long firstSeed = args.length > 3 ? Long.parseLong(args[3]) : ThreadLocalRandom.current().nextLong();
+
+        List<Supplier<PlacementPolicy>> policies = new ArrayList<>();
+        for (String name : entrants)
+            policies.add(Simulator.getPolicy(name));
+        Tournament tournament = new Tournament(List.of(entrants), policies, threads);
+        System.out.println("Threads: " + threads + ", first seed: " + firstSeed);
+        long start = System.nanoTime();
+        tournament.run(firstSeed, maxGames);
+        System.out.print(tournament);
+        System.out.printf("Time: %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+}
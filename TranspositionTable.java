@@ -0,0 +1,267 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size table of positions that have already been searched, shared by
+ * every search thread.
+ * <p>
+ * Positions are looked up by a 64-bit hash of the cards on the board, the card
+ * in hand and the cards still in the deck (see {@link #hash}).  Each entry holds
+ * the position's expected score, how deep the search behind it went, and the
+ * best space found.  The table never grows: it is sized from a memory budget
+ * when it is made, and new entries push old ones out.
+ * <p>
+ * Entries come in buckets of two.  The first entry in a bucket keeps whichever
+ * position was searched deepest, since that took the most work to find.  The
+ * second always takes the newest position that didn't make it into the first.
+ * A position is only ever kept in one of the two: if it is stored again deep
+ * enough to move up into the first, the entry it pushes out there moves down
+ * into the second in its place.
+ * <p>
+ * There are no locks.  Each entry is two longs, the data and the key XORed with
+ * the data, written and read separately.  If two threads write the same entry
+ * at once, or a read overlaps a write, the two longs no longer agree and the
+ * reader just sees a miss.  For cards from a default deck, a wrong answer would
+ * need a 64-bit hash collision.  Cards without an id, from a custom deck, are
+ * keyed on their value and their suit's String.hashCode, so two custom suits
+ * whose names hash alike can't be told apart.
+ * <p>
+ * Probe data is a single long, read with {@link #getValue}, {@link #getDepth}
+ * and {@link #getBestCell}.  A miss is {@link #MISS}.
+ */
+public class TranspositionTable
+{
+    /** What probe returns when the position isn't in the table */
+    public static final long MISS = 0;
+
+    /** Set in every stored entry's data, so that stored data is never MISS */
+    private static final long PRESENT = 1L << 63;
+
+    /** Bytes per entry: the data, and the key XORed with the data */
+    private static final int ENTRY_BYTES = 16;
+
+    /** Random keys for each card id in each space, with one more row for the card in hand */
+    private static final long[][] CELL_KEYS = new long[26][Card.BLANK_ID];
+
+    /** Random keys for each card id still in the deck */
+    private static final long[] DECK_KEYS = new long[Card.BLANK_ID];
+
+    static
+    {
+        // a fixed seed, so hashes are the same from run to run
+        SplittableRandom random = new SplittableRandom(0x5EED5EED5EED5EEDL);
+        for (long[] keys : CELL_KEYS)
+            for (int id = 0; id < keys.length; id++)
+                keys[id] = random.nextLong();
+        for (int id = 0; id < DECK_KEYS.length; id++)
+            DECK_KEYS[id] = random.nextLong();
+    }
+
+    /** Two longs per entry, two entries per bucket */
+    private final AtomicLongArray slots;
+
+    /** The number of buckets less one, for masking hashes */
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates an empty table.
+     *
+     * @param budgetBytes the most memory the table may use.  It gets the largest
+     *                    power of two number of entries that fits, and at least one bucket.
+     */
+    public TranspositionTable(long budgetBytes)
+    {
+        long buckets = Long.highestOneBit(Math.max(1, budgetBytes / (2 * ENTRY_BYTES)));
+        // an AtomicLongArray holds fewer than 2^31 longs, so 2^28 buckets of four longs is the most
+        buckets = Math.min(buckets, 1L << 28);
+        slots = new AtomicLongArray((int) buckets * 4);
+        mask = (int) buckets - 1;
+    }
+
+    /**
+     * Hashes a position: the cards on the board, the card about to be placed,
+     * and the cards that can still be dealt.  Blanks count as empty.
+     *
+     * @param square the board
+     * @param next the card in hand, or Card.BLANK if no card has been dealt yet
+     * @param remaining the cards that can still be dealt
+     * @return the position's hash
+     */
+    public static long hash(PokerSquare square, Card next, Deck remaining)
+    {
+        long h = cardKey(25, next);
+        for (int cell = 0; cell < 25; cell++)
+            h ^= cardKey(cell, square.getCard(cell / 5, cell % 5));
+        for (int i = 0; i < remaining.getSize(); i++)
+            h ^= deckKey(remaining.getCard(i));
+        return h;
+    }
+
+    /** The key for a card still in the deck */
+    static long deckKey(Card card)
+    {
+        int id = card.getId();
+        return id >= 0 && id < Card.BLANK_ID ? DECK_KEYS[id] : customKey(26, card);
+    }
+
+    /**
+     * The key for a card in a space.  Blanks, custom ones included, have no key.
+     *
+     * @param cell the space, or 25 for the card in hand
+     */
+    static long cardKey(int cell, Card card)
+    {
+        int id = card.getId();
+        if (id == Card.BLANK_ID || id < 0 && card.getValue() == 0)
+            return 0;
+        if (id >= 0)
+            return CELL_KEYS[cell][id];
+        return customKey(cell, card);
+    }
+
+    /**
+     * The key for a card without an id.  Their codes are all -1, so they are
+     * keyed on what scoring looks at instead: the value and the suit.
+     *
+     * @param place the space, 25 for the card in hand, or 26 for the deck
+     */
+    private static long customKey(int place, Card card)
+    {
+        return mix(mix((long) place << 32 | card.getValue() & 0xFFFFFFFFL) ^ card.getSuit().hashCode());
+    }
+
+    /** Scrambles the bits of a long, for cards that aren't in the key tables */
+    private static long mix(long z)
+    {
+        z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+        return z ^ z >>> 31;
+    }
+
+    /**
+     * Looks a position up.
+     *
+     * @param key the position's hash
+     * @return the entry's data, or MISS
+     */
+    public long probe(long key)
+    {
+        int b = bucket(key);
+        for (int e = b; e < b + 4; e += 2)
+        {
+            long data = slots.get(e + 1);
+            if (data != MISS && (slots.get(e) ^ data) == key)
+            {
+                hits.increment();
+                return data;
+            }
+        }
+        misses.increment();
+        return MISS;
+    }
+
+    /**
+     * Stores what a search found about a position.
+     *
+     * @param key the position's hash
+     * @param value the expected final score
+     * @param depth how many moves the search looked ahead, up to 255
+     * @param bestCell the best space, or -1 if there isn't one
+     */
+    public void store(long key, double value, int depth, int bestCell)
+    {
+        long data = PRESENT
+                    | (long) (bestCell + 1 & 0xFF) << 40
+                    | (long) (Math.min(depth, 255)) << 32
+                    | Float.floatToRawIntBits((float) value) & 0xFFFFFFFFL;
+
+        int b = bucket(key);
+        long first = slots.get(b + 1), firstCheck = slots.get(b);
+        long second = slots.get(b + 3);
+        boolean inFirst = first != MISS && (firstCheck ^ first) == key;
+        boolean inSecond = !inFirst && second != MISS && (slots.get(b + 2) ^ second) == key;
+        // the first entry keeps the deeper search, the second takes everything else
+        int e = inFirst || first == MISS || depth >= getDepth(first) ? b : b + 2;
+        if (e == b && inSecond)
+        {
+            // moving up: what was first moves down, rather than the key being left in both
+            slots.set(b + 3, first);
+            slots.set(b + 2, firstCheck);
+        }
+        else if (e == b ? first != MISS && !inFirst : second != MISS && !inSecond)
+            evictions.increment();
+        slots.set(e + 1, data);
+        slots.set(e, key ^ data);
+        stores.increment();
+    }
+
+    /** @return the index of the first long of the key's bucket */
+    private int bucket(long key)
+    {
+        return ((int) (key ^ key >>> 32) & mask) << 2;
+    }
+
+    /** @return the expected score from probe data */
+    public static double getValue(long data)
+    {
+        return Float.intBitsToFloat((int) data);
+    }
+
+    /** @return the search depth from probe data */
+    public static int getDepth(long data)
+    {
+        return (int) (data >>> 32) & 0xFF;
+    }
+
+    /** @return the best space from probe data, or -1 */
+    public static int getBestCell(long data)
+    {
+        return ((int) (data >>> 40) & 0xFF) - 1;
+    }
+
+    /** Empties the table and zeroes the counters */
+    public void clear()
+    {
+        for (int i = 0; i < slots.length(); i++)
+            slots.set(i, 0);
+        hits.reset();
+        misses.reset();
+        stores.reset();
+        evictions.reset();
+    }
+
+    /** @return how many entries the table holds */
+    public int getCapacity() {return slots.length() / 2;}
+
+    /** @return the memory the entries take, in bytes */
+    public long getBytes() {return (long) slots.length() * 8;}
+
+    public long getHits() {return hits.sum();}
+
+    public long getMisses() {return misses.sum();}
+
+    public long getStores() {return stores.sum();}
+
+    /** @return how many stores pushed out a different position */
+    public long getEvictions() {return evictions.sum();}
+
+    /** @return the fraction of probes that found their position */
+    public double getHitRate()
+    {
+        long h = getHits(), total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public String toString()
+    {
+        return String.format("Entries: %d (%d KB)  probes: %d  hit rate: %.2f%%  stores: %d  evictions: %d",
+                             getCapacity(), getBytes() / 1024, getHits() + getMisses(),
+                             100 * getHitRate(), getStores(), getEvictions());
+    }
+}
@@ -0,0 +1,414 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A learned estimate of the final score of a square, as a sum of one weight
+ * per line.
+ * <p>
+ * Each of the ten lines is boiled down to a small tuple of features, and the
+ * tuple picks one weight out of a table shared by all the rows and columns:
+ * <pre>
+ * filled     the cards in the line, 0-5
+ * matches    the matching pairs, as in PokerHand: 0, 1, 2, 3, 4, 6 or 10
+ * straight   1 if the line is a straight, or could still become one with the cards left
+ * flush      1 if the line is a flush, or could still become one with the cards left
+ * outs       the cards left that match a value already in the line, up to 7
+ * phase      the cards on the whole square, divided by 5</pre>
+ * A full line's value no longer depends on the deck or the time left, so full
+ * lines always use outs 0 and phase 0 and share their weights.  The table has
+ * {@link #FEATURES} weights, 32 KB as floats.
+ * <p>
+ * The weights are learned by temporal-difference learning over self-play.
+ * After each move, the weight of every line is nudged toward the weight the
+ * same line has after the next move, and after the last move toward the
+ * line's actual score.  Training runs one game per thread at a time, and all
+ * the threads update the one table without any locking.  The odd lost update
+ * doesn't matter to an estimate that's nudged millions of times, and no lock
+ * means training scales with the cores.
+ * <p>
+ * From the command line:
+ * <pre>java ValueFunction [games] [threads] [file] [games per report]</pre>
+ * trains for that many games, continuing from the file if it already holds
+ * weights, and writes the weights back to it after every report.  Each report
+ * is the mean score of the training games since the last one.  ValuePolicy
+ * plays with the weights.
+ */
+public final class ValueFunction
+{
+    /** Marks the start of a weights file: "PSVF" */
+    private static final int MAGIC = 0x50535646;
+
+    /** Bytes before the first weight: the magic number and the weight count */
+    private static final int HEADER = 8;
+
+    /** Match counts 0, 1, 2, 3, 4, 6 and 10 as 0-6 */
+    private static final int[] MATCH_INDEX = {0, 1, 2, 3, 4, 0, 5, 0, 0, 0, 6};
+
+    /** The number of weights: filled x matches x straight x flush x outs x phase */
+    public static final int FEATURES = 6 * 7 * 2 * 2 * 8 * 6;
+
+    /** How far each update moves a weight toward its target */
+    private static final float DEFAULT_RATE = 0.01f;
+
+    private final float[] weights;
+
+    private float rate = DEFAULT_RATE;
+
+    /** Creates an untrained value function, with every weight 0 */
+    public ValueFunction()
+    {
+        weights = new float[FEATURES];
+    }
+
+    private ValueFunction(float[] weights)
+    {
+        this.weights = weights;
+    }
+
+    /** @param rate how far each training update moves a weight toward its target */
+    public void setLearningRate(float rate) {this.rate = rate;}
+
+    /**
+     * The cards that can still be dealt, counted by value and by suit.  Kept
+     * by whoever is asking, so evaluating doesn't allocate anything.
+     */
+    static final class Counts
+    {
+        /** Undealt cards of each value, 2-14 */
+        final int[] values = new int[16];
+
+        /** Undealt cards of each suit, in HandEvaluator's suit order */
+        final int[] suits = new int[4];
+
+        /** Counts the cards in a deck */
+        void count(Deck deck)
+        {
+            for (int v = 0; v < values.length; v++)
+                values[v] = 0;
+            for (int s = 0; s < suits.length; s++)
+                suits[s] = 0;
+            for (int i = 0; i < deck.getSize(); i++)
+                add(deck.getCard(i).getCode(), 1);
+        }
+
+        /** Takes a dealt card off the counts */
+        void remove(Card card)
+        {
+            add(card.getCode(), -1);
+        }
+
+        private void add(int code, int n)
+        {
+            if (code > 0)
+            {
+                values[code & HandEvaluator.VALUE_MASK] += n;
+                suits[Integer.numberOfTrailingZeros(code >>> 4)] += n;
+            }
+        }
+    }
+
+    /**
+     * Works out which weight a line uses.  Only cards HandEvaluator can pack
+     * are seen, so the value function is meant for default decks.
+     *
+     * @param square the square
+     * @param line 0-4 for the rows, 5-9 for the columns
+     * @param placed the number of cards on the square
+     * @param counts the cards that can still be dealt
+     * @return the index of the line's weight
+     */
+    static int feature(PokerSquare square, int line, int placed, Counts counts)
+    {
+        int filled = square.getLineFilled(line);
+        int matches = square.getLineMatches(line);
+        int bits = square.getLineRankBits(line);
+
+        int straight = 0;
+        if (matches == 0)
+        {
+            // try every run of five values from 2-6 up to T-A that holds the line's values
+            int low = bits == 0 ? 14 : Integer.numberOfTrailingZeros(bits);
+            int high = bits == 0 ? 2 : 31 - Integer.numberOfLeadingZeros(bits);
+            for (int lo = Math.max(2, high - 4); lo <= Math.min(10, low) && straight == 0; lo++)
+            {
+                straight = 1;
+                for (int missing = 0x1F << lo & ~bits; missing != 0; missing &= missing - 1)
+                    if (counts.values[Integer.numberOfTrailingZeros(missing)] == 0)
+                        straight = 0;
+            }
+        }
+
+        int flush = 0;
+        int suits = square.getLineSuitCounts(line);
+        if (filled == 0)
+        {
+            for (int s = 0; s < 4; s++)
+                if (counts.suits[s] >= 5)
+                    flush = 1;
+        }
+        else
+        {
+            int shift = Integer.numberOfTrailingZeros(suits) & ~3;
+            if (suits >>> shift == filled && counts.suits[shift >> 2] >= 5 - filled)
+                flush = 1;
+        }
+
+        int outs = 0, phase = 0;
+        if (filled < 5)
+        {
+            for (int b = bits; b != 0; b &= b - 1)
+                outs += counts.values[Integer.numberOfTrailingZeros(b)];
+            outs = Math.min(outs, 7);
+            phase = placed / 5;
+        }
+        return ((((filled * 7 + MATCH_INDEX[matches]) * 2 + straight) * 2 + flush) * 8 + outs) * 6 + phase;
+    }
+
+    /**
+     * Estimates the final score of a square.
+     *
+     * @param square the square
+     * @param remaining the cards that can still be dealt
+     * @return the expected final score
+     */
+    public double evaluate(PokerSquare square, Deck remaining)
+    {
+        Counts counts = new Counts();
+        counts.count(remaining);
+        int placed = countPlaced(square);
+        double value = 0;
+        for (int line = 0; line < 10; line++)
+            value += weights[feature(square, line, placed, counts)];
+        return value;
+    }
+
+    /** @return the number of cards on a square */
+    private static int countPlaced(PokerSquare square)
+    {
+        int placed = 0;
+        for (int row = 0; row < 5; row++)
+            placed += square.getLineFilled(row);
+        return placed;
+    }
+
+    /**
+     * Finds the empty space where a card leaves the square with the highest
+     * estimated value.  Only the card's row and column change, so only those
+     * are compared.  Ties go to the first such space in row-major order.
+     *
+     * @param square the square, which is put back the way it was
+     * @param next the card to place
+     * @param counts the cards that can still be dealt, not including next
+     * @return the chosen space
+     */
+    int getBestCell(PokerSquare square, Card next, Counts counts)
+    {
+        int placed = countPlaced(square) + 1;
+        float best = Float.NEGATIVE_INFINITY;
+        int bestCell = -1;
+        for (int i = 0; i < 5; i++)
+        {
+            float rowBefore = weights[feature(square, i, placed, counts)];
+            for (int j = 0; j < 5; j++)
+            {
+                if (!square.isEmpty(i, j))
+                    continue;
+                float before = rowBefore + weights[feature(square, j + 5, placed, counts)];
+                square.place(i * 5 + j, next);
+                float gain = weights[feature(square, i, placed, counts)]
+                             + weights[feature(square, j + 5, placed, counts)] - before;
+                square.undo();
+                if (gain > best)
+                {
+                    best = gain;
+                    bestCell = i * 5 + j;
+                }
+            }
+        }
+        return bestCell;
+    }
+
+    /**
+     * Plays one game with the current weights, learning from every move.
+     *
+     * @return the final score
+     */
+    private int trainGame(PokerSquare square, Deck deck, Counts counts, int[] before, int[] after, long seed)
+    {
+        deck.reset();
+        deck.shuffle(seed);
+        square.clear();
+        counts.count(deck);
+        for (int placed = 1; placed <= 25; placed++)
+        {
+            Card next = deck.dealCard();
+            counts.remove(next);
+            int cell = getBestCell(square, next, counts);
+            square.setCard(cell / 5, cell % 5, next);
+            for (int line = 0; line < 10; line++)
+            {
+                after[line] = feature(square, line, placed, counts);
+                if (placed > 1)
+                    weights[before[line]] += rate * (weights[after[line]] - weights[before[line]]);
+            }
+            int[] swap = before;
+            before = after;
+            after = swap;
+        }
+        // before now holds the finished square's lines
+        for (int line = 0; line < 10; line++)
+            weights[before[line]] += rate * (square.getLineValue(line) - weights[before[line]]);
+        return square.getScore();
+    }
+
+    /**
+     * Trains by self-play on several threads, reporting as it goes.
+     *
+     * @param games the number of games to play
+     * @param threads the number of threads to play on
+     * @param firstSeed the seed of the first game; game g uses firstSeed + g
+     * @param reportEvery the games between reports
+     * @param checkpoint where to save the weights after every report, or null
+     * @param out where to print the reports
+     * @throws IOException if a checkpoint can't be written
+     */
+    public void train(long games, int threads, long firstSeed, int reportEvery, Path checkpoint, PrintStream out)
+        throws IOException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try
+        {
+            long played = 0;
+            long start = System.nanoTime();
+            while (played < games)
+            {
+                int round = (int) Math.min(reportEvery, games - played);
+                long total = playRound(pool, threads, firstSeed + played, round);
+                played += round;
+                out.printf("games %10d  mean %6.2f  %8.0f games/s%n", played, (double) total / round,
+                           played * 1e9 / (System.nanoTime() - start));
+                if (checkpoint != null)
+                    save(checkpoint);
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    /** @return the total score of a round of training games */
+    private long playRound(ExecutorService pool, int threads, long firstSeed, int round)
+    {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        int from = 0;
+        for (int t = 0; t < threads; t++)
+        {
+            int share = round / threads + (t < round % threads ? 1 : 0);
+            int begin = from, end = from + share;
+            from = end;
+            tasks.add(() -> {
+                PokerSquare square = new PokerSquare();
+                Deck deck = new Deck();
+                Counts counts = new Counts();
+                int[] before = new int[10], after = new int[10];
+                long total = 0;
+                for (int g = begin; g < end; g++)
+                    total += trainGame(square, deck, counts, before, after, firstSeed + g);
+                return total;
+            });
+        }
+        try
+        {
+            long total = 0;
+            for (Future<Long> f : pool.invokeAll(tasks))
+                total += f.get();
+            return total;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while training", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("a training game failed", e.getCause());
+        }
+    }
+
+    /**
+     * Writes the weights to a file.  The file is written under a temporary
+     * name and then moved into place, so a reader never sees half of it.
+     *
+     * @param file where to write
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path file) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER + FEATURES * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(FEATURES);
+        for (float w : weights)
+            buf.putFloat(w);
+        buf.flip();
+
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try
+        {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE))
+            {
+                while (buf.hasRemaining())
+                    ch.write(buf);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Reads weights written by {@link #save}.
+     *
+     * @param file the weights file
+     * @return the value function
+     * @throws IOException if the file can't be read or doesn't hold weights
+     */
+    public static ValueFunction load(Path file) throws IOException
+    {
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() != HEADER + FEATURES * 4 || buf.getInt() != MAGIC || buf.getInt() != FEATURES)
+            throw new IOException(file + " doesn't hold value function weights");
+        float[] weights = new float[FEATURES];
+        buf.asFloatBuffer().get(weights);
+        return new ValueFunction(weights);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path file = Path.of(args.length > 2 ? args[2] : "value-function.bin");
+        int reportEvery = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+
+        ValueFunction function = Files.exists(file) ? load(file) : new ValueFunction();
+        System.out.println("Threads: " + threads + ", weights: " + file);
+        function.train(games, threads, ThreadLocalRandom.current().nextLong(), reportEvery, file, System.out);
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Plays chunks of a simulation for a Coordinator, and sends back the totals.
+ * See Coordinator for the protocol.
+ * <p>
+ * From the command line:
+ * <pre>java Worker port [threads] [chunks before quitting]</pre>
+ * The last argument makes the worker exit without a word after that many
+ * chunks, which is a quick way to watch the coordinator hand the next chunk on.
+ */
+public class Worker
+{
+    public static void main(String[] args) throws IOException
+    {
+        int port = Integer.parseInt(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long quitAfter = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+        {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(Coordinator.MAGIC);
+            out.flush();
+            if (in.readInt() != Coordinator.MAGIC)
+                throw new IOException("not a coordinator");
+            Simulator simulator = new Simulator(Simulator.getPolicy(in.readUTF()), threads);
+
+            for (long chunks = 0; ; chunks++)
+            {
+                long firstSeed = in.readLong(), games = in.readLong();
+                if (games == 0)
+                    break;
+                SimulationResult result = simulator.run(firstSeed, games);
+                if (chunks == quitAfter)
+                    System.exit(1);
+                out.writeLong(firstSeed);
+                result.writeTo(out);
+                out.flush();
+            }
+        }
+    }
+}
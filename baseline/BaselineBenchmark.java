@@ -0,0 +1,217 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The Benchmark harness cut down to what the original code can run, which is
+ * what produced benchmark-baseline.txt.
+ * <p>
+ * Benchmark itself needs classes and methods that the original code doesn't
+ * have, such as Card.fromId, RandomPolicy and PokerSquare.clear.  This class
+ * uses only the original Card, Deck, PokerHand and PokerSquare, and measures
+ * the same way, with the same benchmark names and fixed boards, and prints the
+ * same format.  The two games differ in one way: with no policies to call,
+ * cards go in a random order of the spaces, which is how RandomPolicy places
+ * them too.
+ * <p>
+ * It lives here, out of the way of <code>javac *.java</code>, and is compiled
+ * into a checkout of the baseline commit:
+ * <pre>
+ * git worktree add ../pokersquares-baseline f278dc4
+ * cp baseline/BaselineBenchmark.java ../pokersquares-baseline
+ * cd ../pokersquares-baseline
+ * javac -encoding ISO-8859-1 *.java
+ * java BaselineBenchmark &gt; benchmark-baseline.txt</pre>
+ */
+public class BaselineBenchmark
+{
+    /** One operation of a benchmark */
+    private interface Op
+    {
+        int run();
+    }
+
+    private static final long WARMUP_NANOS = 1000000000L;
+    private static final long ITERATION_NANOS = 500000000L;
+    private static final int ITERATIONS = 5;
+
+    /** Collects every result so the work can't be optimized away */
+    private static int sink;
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<Op> ops = new ArrayList<Op>();
+
+    /** A new default deck, in the order it is built in */
+    private static final Deck DECK = new Deck();
+
+    private void add(String name, Op op)
+    {
+        names.add(name);
+        ops.add(op);
+    }
+
+    /** Sets up every benchmark */
+    private BaselineBenchmark()
+    {
+        // the same hands as Benchmark, by card id (value - 2) * 4 + suit
+        int[][] hands = {
+            {48, 41, 30, 13, 6},     // High Card:       AH QD 9S 5D 3S
+            {48, 49, 30, 13, 6},     // One Pair:        AH AD 9S 5D 3S
+            {48, 49, 30, 31, 6},     // Two Pair:        AH AD 9S 9C 3S
+            {48, 49, 50, 31, 6},     // Three of a Kind: AH AD AS 9C 3S
+            {20, 25, 30, 35, 36},    // Straight:        7H 8D 9S TC JH
+            {48, 40, 28, 12, 4},     // Flush:           AH QH 9H 5H 3H
+            {48, 49, 50, 31, 30},    // Full House:      AH AD AS 9C 9S
+            {48, 49, 50, 51, 6},     // Four of a Kind:  AH AD AS AC 3S
+            {20, 24, 28, 32, 36}};   // Straight Flush:  7H 8H 9H TH JH
+        String[] names = {"highCard", "onePair", "twoPair", "threeOfAKind", "straight",
+            "flush", "fullHouse", "fourOfAKind", "straightFlush"};
+        for (int h = 0; h < hands.length; h++)
+        {
+            PokerHand[] rotated = new PokerHand[4];
+            for (int r = 0; r < 4; r++)
+            {
+                rotated[r] = new PokerHand();
+                for (int id : hands[h])
+                    rotated[r].addCard(card(id / 4 * 4 + (id + r) % 4));
+            }
+            add("evaluate." + names[h], new Op() {
+                private int next;
+                public int run()
+                {
+                    return rotated[next++ & 3].getRankInt();
+                }
+            });
+        }
+
+        add("deck.construct", () -> new Deck().getSize());
+
+        Deck shuffled = new Deck();
+        add("deck.shuffle", () -> {
+            shuffled.shuffle();
+            return shuffled.getCard(0).getValue();
+        });
+
+        add("deck.deal52", () -> {
+            Deck deck = new Deck();
+            int sum = 0;
+            for (int i = 0; i < 52; i++)
+                sum += deck.removeCard(0).getValue();
+            return sum;
+        });
+
+        // the original scored a square by building its ten hands at the end
+        PokerSquare full = fixedSquare(42);
+        Card[] fullCards = new Card[25];
+        for (int cell = 0; cell < 25; cell++)
+            fullCards[cell] = full.getCard(cell / 5, cell % 5);
+        add("square.fillScore", () -> {
+            PokerSquare square = new PokerSquare();
+            for (int cell = 0; cell < 25; cell++)
+                square.setCard(cell / 5, cell % 5, fullCards[cell]);
+            square.buildHands();
+            return square.getScore();
+        });
+        add("square.summary", () -> full.getSummary().length());
+
+        int[] cells = new int[25];
+        add("game.random", () -> {
+            Deck deck = new Deck();
+            deck.shuffle();
+            PokerSquare board = new PokerSquare();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int cell = 0; cell < 25; cell++)
+                cells[cell] = cell;
+            for (int i = 0; i < 25; i++)
+            {
+                int k = i + random.nextInt(25 - i);
+                int cell = cells[k];
+                cells[k] = cells[i];
+                board.setCard(cell / 5, cell % 5, deck.removeCard(0));
+            }
+            board.buildHands();
+            return board.getScore();
+        });
+    }
+
+    /** @return the card with an id as Card.fromId numbers them, taken from a new deck */
+    private static Card card(int id)
+    {
+        int value = id / 4 + 2;
+        // the deck is built Ace first, then Two to King, four suits each
+        return DECK.getCard((value == 14 ? 0 : value - 1) * 4 + id % 4);
+    }
+
+    /**
+     * Builds a full square from a fixed seed, the same board Benchmark builds.
+     */
+    private static PokerSquare fixedSquare(long seed)
+    {
+        List<Card> cards = new ArrayList<Card>();
+        for (int id = 0; id < 52; id++)
+            cards.add(card(id));
+        Collections.shuffle(cards, new Random(seed));
+        PokerSquare square = new PokerSquare();
+        for (int cell = 0; cell < 25; cell++)
+            square.setCard(cell / 5, cell % 5, cards.get(cell));
+        square.buildHands();
+        return square;
+    }
+
+    /**
+     * Runs one benchmark, exactly as Benchmark.measure does.
+     *
+     * @return the operations per second and the bytes allocated per operation
+     */
+    private static double[] measure(Op op)
+    {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().threadId();
+
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end)
+            for (int i = 0; i < 1000; i++)
+                sink += op.run();
+
+        long ops = 0, nanos = 0, bytes = 0;
+        for (int it = 0; it < ITERATIONS; it++)
+        {
+            long allocated = threads.getThreadAllocatedBytes(id);
+            long start = System.nanoTime();
+            end = start + ITERATION_NANOS;
+            long now;
+            do
+            {
+                for (int i = 0; i < 1000; i++)
+                    sink += op.run();
+                ops += 1000;
+                now = System.nanoTime();
+            }
+            while (now < end);
+            nanos += now - start;
+            bytes += threads.getThreadAllocatedBytes(id) - allocated;
+        }
+        return new double[] {ops * 1e9 / nanos, (double) bytes / ops};
+    }
+
+    public static void main(String[] args)
+    {
+        BaselineBenchmark benchmark = new BaselineBenchmark();
+        System.out.println("# baseline commit f278dc4, before any of the backlog, measured with"
+                           + " baseline/BaselineBenchmark.java");
+        System.out.printf("# java %s, %d cpus%n", System.getProperty("java.version"),
+                          Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-28s %16s %12s%n", "benchmark", "ops/s", "bytes/op");
+        for (int b = 0; b < benchmark.ops.size(); b++)
+        {
+            double[] r = measure(benchmark.ops.get(b));
+            System.out.printf("%-28s %16.0f %12.1f%n", benchmark.names.get(b), r[0], r[1]);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+}
@@ -0,0 +1,65 @@
+package pokersquares;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The benchmarks of the Benchmark harness, run under JMH.
+ * <p>
+ * JMH won't take benchmarks in the unnamed package, and a class in a package
+ * can't name the game's classes, so each operation is fetched from
+ * Benchmark.getOp by reflection and called through IntSupplier.  Every fork
+ * runs one benchmark, so that call only ever sees one class, and the results
+ * are comparable with the harness's own.
+ * <p>
+ * <pre>
+ * mvn -P jmh package
+ * java -jar target/benchmarks.jar -prof gc -rf json                        everything
+ * java -jar target/benchmarks.jar -prof gc -rf json -p name=game.random    one benchmark
+ * java -jar target/benchmarks.jar -prof gc -rf json -p name=batch.evaluate10240 -jvmArgsAppend "--add-modules jdk.incubator.vector"</pre>
+ * The last needs the kernel in the vector directory compiled onto the class
+ * path too; see VectorBatchEvaluator.  The gc profiler adds bytes per
+ * operation to each result, and -rf json saves them all to jmh-result.json.
+ * jmh-baseline.json was made this way, and jmh-baseline.txt says on what.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotPaths
+{
+    @Param({"evaluate.highCard", "evaluate.onePair", "evaluate.twoPair", "evaluate.threeOfAKind",
+            "evaluate.straight", "evaluate.flush", "evaluate.fullHouse", "evaluate.fourOfAKind",
+            "evaluate.straightFlush", "deck.construct", "deck.shuffle", "deck.deal52", "deck.resetDeal52",
+            "square.fillScore", "square.summary", "game.random", "game.randomReusedDeck",
+            "batch.pokerHand10240", "batch.evaluate10240", "batch.scoreSquares1024"})
+    public String name;
+
+    private IntSupplier op;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException
+    {
+        op = (IntSupplier) Class.forName("Benchmark").getMethod("getOp", String.class).invoke(null, name);
+    }
+
+    @Benchmark
+    public int run()
+    {
+        return op.getAsInt();
+    }
+}
@@ -0,0 +1,217 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that CanonicalSquare sees through every disguise: shuffling the rows,
+ * shuffling the columns and renaming the suits of a position, all at once,
+ * gives the same canonical form, and an answer for the canonical form leads to
+ * the same place whichever disguise it is moved back to.
+ * <p>
+ * Like the other tests, this is a plain program that stops with an
+ * AssertionError at the first failure:
+ * <pre>
+ * javac -d out *.java
+ * javac -cp out -d out test/CanonicalSquareTest.java
+ * java -cp out CanonicalSquareTest</pre>
+ */
+public class CanonicalSquareTest
+{
+    public static void main(String[] args)
+    {
+        everySuitRenaming();
+        randomDisguises();
+        System.out.println("CanonicalSquareTest: all passed");
+    }
+
+    /**
+     * All 24 renamings of the suits give the same form.  With a card in hand
+     * the search only tries the 6 that give it the lowest suit, so this checks
+     * that nothing is lost by leaving out the other 18.
+     */
+    private static void everySuitRenaming()
+    {
+        int[] same = {0, 1, 2, 3, 4};
+        for (int seed = 0; seed < 20; seed++)
+        {
+            Position position = Position.deal(seed, seed % 25, seed % 4 != 0);
+            CanonicalSquare canonical = position.canonical();
+            int[] suits = {0, 1, 2, 3};
+            do
+            {
+                Position renamed = position.disguise(same, same, suits);
+                sameForm(position, canonical, renamed, "seed " + seed + " suits " + Arrays.toString(suits));
+            }
+            while (nextPermutation(suits));
+        }
+    }
+
+    /** Random rows, columns and suits together, on positions from empty to full */
+    private static void randomDisguises()
+    {
+        Random random = new Random(13);
+        for (int seed = 0; seed < 150; seed++)
+        {
+            Position position = Position.deal(seed, seed % 26, seed % 26 < 25 && seed % 3 != 0);
+            CanonicalSquare canonical = position.canonical();
+            for (int d = 0; d < 3; d++)
+            {
+                Position disguised = position.disguise(shuffled(5, random), shuffled(5, random), shuffled(4, random));
+                sameForm(position, canonical, disguised, "seed " + seed + " disguise " + d);
+            }
+        }
+    }
+
+    /** Checks that a disguise of a position has the same canonical form, and that answers carry over */
+    private static void sameForm(Position position, CanonicalSquare canonical, Position disguised, String what)
+    {
+        CanonicalSquare other = disguised.canonical();
+        check(other.getHash() == canonical.getHash(), what + ": hashes differ");
+        check(other.equals(canonical), what + ": forms differ");
+        check(canonical.getHash() == TranspositionTable.hash(canonical.toSquare(), canonical.getNext(),
+                                                             deckOf(canonical.getDeck())),
+              what + ": hash isn't TranspositionTable's");
+        for (int cell = 0; cell < 25; cell++)
+        {
+            mapsBack(position, canonical, cell, what);
+            mapsBack(disguised, other, cell, what);
+        }
+
+        // putting the card in hand on a canonical space, moved back to either disguise, gives one position
+        if (position.next == Card.BLANK)
+            return;
+        for (int cell = 0; cell < 25; cell++)
+            if (canonical.getCard(cell) == Card.BLANK)
+            {
+                long a = position.play(canonical.fromCanonicalCell(cell)).canonical().getHash();
+                long b = disguised.play(other.fromCanonicalCell(cell)).canonical().getHash();
+                check(a == b, what + ": canonical space " + cell + " leads to different positions");
+            }
+    }
+
+    /** Checks that a canonical space comes from a space holding the same card, renamed */
+    private static void mapsBack(Position position, CanonicalSquare canonical, int cell, String what)
+    {
+        int from = canonical.fromCanonicalCell(cell);
+        check(canonical.toCanonicalCell(from) == cell, what + ": space " + cell + " doesn't map back");
+        check(canonical.toCanonical(position.square.getCard(from / 5, from % 5)) == canonical.getCard(cell),
+              what + ": space " + cell + " holds a different card");
+    }
+
+    /** A board, the card in hand and the cards left */
+    private static final class Position
+    {
+        final PokerSquare square;
+        final Card next;
+        final long deck;
+
+        Position(PokerSquare square, Card next, long deck)
+        {
+            this.square = square;
+            this.next = next;
+            this.deck = deck;
+        }
+
+        /** @return a seeded position with some cards on random spaces, and maybe a card in hand */
+        static Position deal(long seed, int cards, boolean inHand)
+        {
+            Random random = new Random(seed);
+            Deck deck = new Deck();
+            deck.shuffle(seed);
+            PokerSquare square = new PokerSquare();
+            int[] cells = shuffled(25, random);
+            for (int k = 0; k < cards; k++)
+                square.setCard(cells[k] / 5, cells[k] % 5, deck.dealCard());
+            Card next = inHand ? deck.dealCard() : Card.BLANK;
+            long bits = 0;
+            for (int i = 0; i < deck.getSize(); i++)
+                bits |= 1L << deck.getCard(i).getId();
+            return new Position(square, next, bits);
+        }
+
+        CanonicalSquare canonical()
+        {
+            return CanonicalSquare.of(square, next, deckOf(deck));
+        }
+
+        /**
+         * @param rows rows[i] is where row i goes
+         * @param columns columns[j] is where column j goes
+         * @param suits suits[s] is what suit s becomes
+         * @return the same position in disguise
+         */
+        Position disguise(int[] rows, int[] columns, int[] suits)
+        {
+            PokerSquare moved = new PokerSquare();
+            for (int i = 0; i < 5; i++)
+                for (int j = 0; j < 5; j++)
+                    moved.setCard(rows[i], columns[j], rename(square.getCard(i, j), suits));
+            long renamed = 0;
+            for (long b = deck; b != 0; b &= b - 1)
+                renamed |= 1L << rename(Card.fromId(Long.numberOfTrailingZeros(b)), suits).getId();
+            return new Position(moved, rename(next, suits), renamed);
+        }
+
+        /** @return the position after the card in hand goes on a space */
+        Position play(int cell)
+        {
+            PokerSquare after = new PokerSquare(square);
+            after.setCard(cell / 5, cell % 5, next);
+            return new Position(after, Card.BLANK, deck);
+        }
+    }
+
+    private static Card rename(Card card, int[] suits)
+    {
+        int id = card.getId();
+        return id == Card.BLANK_ID ? card : Card.fromId(id & ~3 | suits[id & 3]);
+    }
+
+    /** @return a deck holding just the cards whose ids are set */
+    private static Deck deckOf(long ids)
+    {
+        Deck deck = new Deck();
+        for (int i = deck.getSize() - 1; i >= 0; i--)
+            if ((ids >>> deck.getCard(i).getId() & 1) == 0)
+                deck.removeCard(i);
+        return deck;
+    }
+
+    /** @return 0 to n-1 in random order */
+    private static int[] shuffled(int n, Random random)
+    {
+        int[] p = new int[n];
+        for (int i = 0; i < n; i++)
+            p[i] = i;
+        for (int i = n - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int t = p[i]; p[i] = p[j]; p[j] = t;
+        }
+        return p;
+    }
+
+    /** Steps to the next permutation in lexicographic order, returning false after the last */
+    private static boolean nextPermutation(int[] p)
+    {
+        int i = p.length - 2;
+        while (i >= 0 && p[i] > p[i + 1])
+            i--;
+        if (i < 0)
+            return false;
+        int j = p.length - 1;
+        while (p[j] < p[i])
+            j--;
+        int t = p[i]; p[i] = p[j]; p[j] = t;
+        for (int a = i + 1, b = p.length - 1; a < b; a++, b--)
+        {
+            t = p[a]; p[a] = p[b]; p[b] = t;
+        }
+        return true;
+    }
+
+    private static void check(boolean ok, String what)
+    {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.SplittableRandom;
+
+/**
+ * Checks HandEvaluator and BatchEvaluator against PokerHand's original chain
+ * of checks, getRankIntSlow.
+ * <p>
+ * PokerHand only takes the slow chain for cards without codes, so every hand
+ * is also built from copies of its cards whose suits have custom names.  Those
+ * score exactly like the originals, and their getRankInt is the answer the
+ * fast evaluators have to match.  Every hand of five different cards is
+ * checked, with and without blanks, and then seeded random hands, which can
+ * repeat cards and are dealt to favour straights and flushes.
+ * <p>
+ * The batch is checked with the scalar loop, and with whichever kernel
+ * BatchEvaluator loaded.  To check the Vector API kernel too, compile it as
+ * VectorBatchEvaluator describes and add the module:
+ * <pre>
+ * javac -d out *.java
+ * javac -cp out -d out test/HandEvaluatorTest.java
+ * java -cp out HandEvaluatorTest
+ * java --add-modules jdk.incubator.vector -cp out HandEvaluatorTest</pre>
+ */
+public class HandEvaluatorTest
+{
+    /** Hands per batch.  Not a multiple of any vector length, so the tail is checked too. */
+    private static final int BATCH = 4093;
+
+    /** The card with each id, blank included, with its suit renamed so it has no code */
+    private static final Card[] CUSTOM = new Card[Card.BLANK_ID + 1];
+
+    static
+    {
+        for (int id = 0; id < Card.BLANK_ID; id++)
+        {
+            Card card = Card.fromId(id);
+            CUSTOM[id] = Card.valueOf(card.getRank(), card.getSuit() + " (custom)", card.getValue(),
+                                      card.getShortRank(), card.getShortSuit());
+        }
+        CUSTOM[Card.BLANK_ID] = Card.BLANK;
+    }
+
+    private final BatchEvaluator.Hands hands = new BatchEvaluator.Hands(BATCH);
+    private final int[][] ids = new int[BATCH][];
+    private final int[] expected = new int[BATCH];
+    private final int[] scalar = new int[BATCH];
+    private final int[] kernel = new int[BATCH];
+    private long checked;
+
+    public static void main(String[] args)
+    {
+        HandEvaluatorTest test = new HandEvaluatorTest();
+        test.customCardsHaveNoCode();
+        test.everyHand();
+        test.randomHands();
+        System.out.println("HandEvaluatorTest: all passed, " + test.checked + " hands, "
+                           + (BatchEvaluator.isVectorized() ? "Vector API" : "scalar") + " kernel");
+    }
+
+    /** Without this, the slow chain wouldn't be what the answers are checked against */
+    private void customCardsHaveNoCode()
+    {
+        for (int id = 0; id < Card.BLANK_ID; id++)
+            check(CUSTOM[id].getCode() < 0 && CUSTOM[id].getId() < 0, "custom card " + id + " has a code");
+    }
+
+    /** Every set of five different cards, where any of them may be blank instead */
+    private void everyHand()
+    {
+        int n = Card.BLANK_ID;
+        for (int a = 0; a <= n; a++)
+            for (int b = a == n ? a : a + 1; b <= n; b++)
+                for (int c = b == n ? b : b + 1; c <= n; c++)
+                    for (int d = c == n ? c : c + 1; d <= n; d++)
+                        for (int e = d == n ? d : d + 1; e <= n; e++)
+                            add(new int[] {a, b, c, d, e});
+        flush();
+    }
+
+    /** Seeded hands in random order, which can repeat cards, five of a kind included */
+    private void randomHands()
+    {
+        SplittableRandom random = new SplittableRandom(0x4A4D);
+        for (int h = 0; h < 500000; h++)
+        {
+            // a quarter of the hands use one suit, a quarter a run of five values
+            boolean oneSuit = random.nextInt(4) == 0, run = random.nextInt(4) == 0;
+            int suit = random.nextInt(4), low = random.nextInt(2, 11);
+            int[] hand = new int[5];
+            for (int k = 0; k < 5; k++)
+            {
+                if (random.nextInt(8) == 0)
+                {
+                    hand[k] = Card.BLANK_ID;
+                    continue;
+                }
+                int value = run ? low + random.nextInt(5) : random.nextInt(2, 15);
+                hand[k] = (value - 2) * 4 + (oneSuit ? suit : random.nextInt(4));
+            }
+            add(hand);
+        }
+        flush();
+    }
+
+    /** Checks one hand with HandEvaluator now, and queues it for the batch */
+    private void add(int[] hand)
+    {
+        int category = slowCategory(hand);
+        int[] codes = new int[5];
+        for (int k = 0; k < 5; k++)
+            codes[k] = Card.fromId(hand[k]).getCode();
+        int result = HandEvaluator.evaluate(codes[0], codes[1], codes[2], codes[3], codes[4]);
+        int fastCategory = HandEvaluator.getCategory(result);
+        check(fastCategory == category, "HandEvaluator", hand, fastCategory, category);
+        check(HandEvaluator.getScore(result) == HandEvaluator.HAND_VALUES[category],
+              "HandEvaluator score of " + describe(hand));
+        PokerHand fast = new PokerHand(Card.fromId(hand[0]), Card.fromId(hand[1]), Card.fromId(hand[2]),
+                                       Card.fromId(hand[3]), Card.fromId(hand[4]));
+        check(fast.getRankInt() == category, "PokerHand.getRankInt", hand, fast.getRankInt(), category);
+
+        int i = hands.add(codes[0], codes[1], codes[2], codes[3], codes[4]);
+        ids[i] = hand;
+        expected[i] = category;
+        checked++;
+        if (hands.size() == BATCH)
+            flush();
+    }
+
+    /** Classifies the queued hands both ways and checks them */
+    private void flush()
+    {
+        int size = hands.size();
+        BatchEvaluator.classifyScalar(hands.values, hands.suits, 0, size, scalar);
+        BatchEvaluator.classify(hands, kernel);
+        for (int i = 0; i < size; i++)
+        {
+            check(scalar[i] == expected[i], "classifyScalar", ids[i], scalar[i], expected[i]);
+            check(kernel[i] == expected[i], "classify", ids[i], kernel[i], expected[i]);
+        }
+        hands.clear();
+    }
+
+    /** @return the category from PokerHand's chain of checks, through copies of the cards without codes */
+    private static int slowCategory(int[] hand)
+    {
+        PokerHand slow = new PokerHand(CUSTOM[hand[0]], CUSTOM[hand[1]], CUSTOM[hand[2]],
+                                       CUSTOM[hand[3]], CUSTOM[hand[4]]);
+        // five blanks all have codes, so they still go the fast way; the chain calls them High Card
+        boolean allBlank = true;
+        for (int id : hand)
+            allBlank &= id == Card.BLANK_ID;
+        return allBlank ? 0 : slow.getRankInt();
+    }
+
+    private static String describe(int[] hand)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int id : hand)
+            sb.append(id == Card.BLANK_ID ? "--" : Card.fromId(id).getShortString()).append(' ');
+        return sb.toString().trim();
+    }
+
+    private static void check(boolean ok, String what, int[] hand, int actual, int expected)
+    {
+        if (!ok)
+            throw new AssertionError(what + " of " + describe(hand) + ": " + HandEvaluator.HAND_RANKS[actual]
+                                     + ", not " + HandEvaluator.HAND_RANKS[expected]);
+    }
+
+    private static void check(boolean ok, String what)
+    {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
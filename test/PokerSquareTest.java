@@ -0,0 +1,279 @@
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks PokerSquare's place, undo, snapshot and restore against squares built
+ * with setCard alone, and what restore publishes.
+ * <p>
+ * There is no test framework here, so this is a plain program that stops with
+ * an AssertionError at the first failure.  Compile it against the classes and
+ * run it:
+ * <pre>
+ * javac -d out *.java
+ * javac -cp out -d out test/PokerSquareTest.java
+ * java -cp out PokerSquareTest</pre>
+ */
+public class PokerSquareTest
+{
+    public static void main(String[] args) throws InterruptedException
+    {
+        placeAndUndo();
+        setCardBetweenPlaceAndUndo();
+        restoreBetweenPlaceAndUndo();
+        restorePublishedAsOneMove();
+        copyStartsWithNothingToUndo();
+        snapshotRoundTrip();
+        undoLimits();
+        randomProbes();
+        System.out.println("PokerSquareTest: all passed");
+    }
+
+    /** Placing cards and undoing them all gives back the square as it was */
+    private static void placeAndUndo()
+    {
+        PokerSquare square = deal(7, 10);
+        String before = square.getSummary();
+        int score = square.getScore();
+        Deck deck = new Deck();
+        deck.shuffle(8);
+        int placed = 0;
+        for (int cell = 0; cell < 25; cell++)
+            if (square.isEmpty(cell / 5, cell % 5))
+            {
+                square.place(cell, next(deck, square));
+                placed++;
+                check(square.getScore() == rebuild(square).getScore(), "score after place");
+            }
+        check(square.getUndoDepth() == placed, "undo depth");
+        for (int k = 0; k < placed; k++)
+            square.undo();
+        check(square.getScore() == score, "score after undo");
+        check(square.getSummary().equals(before), "summary after undo");
+    }
+
+    /** A setCard on the same line between place and undo is kept, and counted */
+    private static void setCardBetweenPlaceAndUndo()
+    {
+        PokerSquare square = new PokerSquare();
+        square.place(0, card(3, 0));
+        square.setCard(0, 1, card(2, 0));
+        square.setCard(0, 2, card(2, 1));
+        square.undo();
+        check(square.isEmpty(0, 0), "undo empties the space");
+        check(square.getLineCategory(0) == 1, "row A still holds a pair");
+        check(square.getScore() == 1, "score 1, not " + square.getScore());
+        matches(square, rebuild(square), "after interleaved setCard");
+    }
+
+    /** restore empties the undo stack, and leaves the square matching the snapshot */
+    private static void restoreBetweenPlaceAndUndo()
+    {
+        PokerSquare square = deal(11, 12);
+        BoardSnapshot snapshot = square.snapshot();
+        square.place(24, card(14, 3));
+        square.place(23, card(14, 2));
+        square.restore(snapshot);
+        check(square.getUndoDepth() == 0, "restore empties the undo stack");
+        check(square.snapshot().equals(snapshot), "restore matches the snapshot");
+        matches(square, rebuild(square), "after restore");
+        try
+        {
+            square.undo();
+            throw new AssertionError("undo after restore should fail");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+    }
+
+    /** restore publishes one move that replaces the cards subscribers saw, not the ones tried */
+    private static void restorePublishedAsOneMove() throws InterruptedException
+    {
+        PokerSquare square = deal(11, 23);
+        BoardSnapshot snapshot = square.snapshot();
+        Moves moves = new Moves();
+        square.subscribe(moves);
+        square.setCard(4, 3, card(9, 2));
+        int scoreBefore = square.getScore();
+        check(moves.next().get(0) instanceof SquareEvent.CardPlaced, "setCard is published");
+        square.place(24, card(14, 3));
+        square.restore(snapshot);
+        List<SquareEvent> move = moves.next();
+        check(move.get(0) instanceof SquareEvent.CardPlaced placed && placed.getRow() == 4
+              && placed.getColumn() == 3 && placed.getReplaced() == card(9, 2) && placed.getCard() == Card.BLANK,
+              "restore replaces the card that was published: " + move);
+        int change = 0;
+        for (SquareEvent event : move.subList(1, move.size()))
+        {
+            check(!(event instanceof SquareEvent.CardPlaced), "the tried card isn't published: " + move);
+            if (event instanceof SquareEvent.ScoreChanged scored)
+            {
+                change = scored.getChange();
+                check(scored.getScore() == square.getScore(), "score after restore");
+            }
+        }
+        check(scoreBefore + change == square.getScore(), "score change of restore");
+        check(square.getUndoDepth() == 0 && square.snapshot().equals(snapshot), "restored");
+        square.restore(snapshot);
+        square.closeEvents();
+        check(moves.next() == Moves.DONE, "restoring to where it is publishes nothing");
+    }
+
+    /** A copy can't undo the original's tries */
+    private static void copyStartsWithNothingToUndo()
+    {
+        PokerSquare square = deal(5, 20);
+        String before = square.getSummary();
+        square.place(20, card(2, 0));
+        square.place(21, card(2, 1));
+        PokerSquare copy = new PokerSquare(square);
+        check(copy.getUndoDepth() == 0, "copy has nothing to undo");
+        matches(copy, square, "copy of tried cards");
+        copy.place(22, card(3, 0));
+        copy.undo();
+        try
+        {
+            copy.undo();
+            throw new AssertionError("undo of the original's try should fail");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        square.undo();
+        square.undo();
+        check(square.getSummary().equals(before), "original still undoes its tries");
+    }
+
+    /** A snapshot turns back into the same square, on its own or through restore */
+    private static void snapshotRoundTrip()
+    {
+        for (int seed = 0; seed < 100; seed++)
+        {
+            PokerSquare square = deal(seed, seed % 26);
+            BoardSnapshot snapshot = square.snapshot();
+            matches(snapshot.toSquare(), square, "toSquare of seed " + seed);
+            PokerSquare other = deal(seed + 1000, 25);
+            other.restore(snapshot);
+            matches(other, square, "restore of seed " + seed);
+            check(other.snapshot().equals(snapshot) && other.snapshot().hashCode() == snapshot.hashCode(),
+                  "equal snapshots");
+        }
+        check(new PokerSquare().snapshot().toString().equals("..".repeat(25)), "empty snapshot");
+    }
+
+    /** The stack holds one move per space, and no more */
+    private static void undoLimits()
+    {
+        PokerSquare square = new PokerSquare();
+        Deck deck = new Deck();
+        deck.shuffle(3);
+        for (int cell = 0; cell < PokerSquare.MAX_UNDO; cell++)
+            square.place(cell, deck.dealCard());
+        try
+        {
+            square.place(0, deck.dealCard());
+            throw new AssertionError("place past MAX_UNDO should fail");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+        for (int cell = 0; cell < PokerSquare.MAX_UNDO; cell++)
+            square.undo();
+        check(square.getScore() == 0 && square.snapshot().equals(new PokerSquare().snapshot()), "all undone");
+    }
+
+    /** Probing every empty space of many positions leaves each square exactly as it was */
+    private static void randomProbes()
+    {
+        for (int seed = 0; seed < 200; seed++)
+        {
+            PokerSquare square = deal(seed, seed % 25);
+            PokerSquare copy = new PokerSquare(square);
+            Card probe = next(new Deck(), square);
+            for (int cell = 0; cell < 25; cell++)
+                if (square.isEmpty(cell / 5, cell % 5))
+                {
+                    square.place(cell, probe);
+                    check(square.getScore() == rebuild(square).getScore(), "probe score of seed " + seed);
+                    square.undo();
+                }
+            matches(square, copy, "after probes of seed " + seed);
+        }
+    }
+
+    /** @return a square holding the first few cards of a seeded deal, in row-major order */
+    private static PokerSquare deal(long seed, int cards)
+    {
+        Deck deck = new Deck();
+        deck.shuffle(seed);
+        PokerSquare square = new PokerSquare();
+        for (int cell = 0; cell < cards; cell++)
+            square.setCard(cell / 5, cell % 5, deck.dealCard());
+        return square;
+    }
+
+    /** @return a new square with the same cards, placed with setCard */
+    private static PokerSquare rebuild(PokerSquare square)
+    {
+        PokerSquare copy = new PokerSquare();
+        for (int cell = 0; cell < 25; cell++)
+            copy.setCard(cell / 5, cell % 5, square.getCard(cell / 5, cell % 5));
+        return copy;
+    }
+
+    /** @return the next card from a deck that isn't already on the square */
+    private static Card next(Deck deck, PokerSquare square)
+    {
+        while (true)
+        {
+            Card card = deck.dealCard();
+            if (!square.snapshot().toString().contains(card.getShortString()))
+                return card;
+        }
+    }
+
+    /** @return the card with a value, 2-14, and a suit in Card.fromId's order */
+    private static Card card(int value, int suit)
+    {
+        return Card.fromId((value - 2) * 4 + suit);
+    }
+
+    /** Hands the moves published on the common pool to the test's thread */
+    private static final class Moves implements Flow.Subscriber<List<SquareEvent>>
+    {
+        static final List<SquareEvent> DONE = List.of();
+
+        private final BlockingQueue<List<SquareEvent>> queue = new LinkedBlockingQueue<>();
+
+        public void onSubscribe(Flow.Subscription subscription) {subscription.request(Long.MAX_VALUE);}
+        public void onNext(List<SquareEvent> move) {queue.add(move);}
+        public void onError(Throwable error) {error.printStackTrace();}
+        public void onComplete() {queue.add(DONE);}
+
+        List<SquareEvent> next() throws InterruptedException
+        {
+            List<SquareEvent> move = queue.poll(10, TimeUnit.SECONDS);
+            check(move != null, "no move published");
+            return move;
+        }
+    }
+
+    private static void matches(PokerSquare actual, PokerSquare expected, String what)
+    {
+        check(actual.getScore() == expected.getScore(), what + ": score " + actual.getScore()
+                                                        + ", not " + expected.getScore());
+        check(actual.getSummary().equals(expected.getSummary()), what + ": summary differs");
+    }
+
+    private static void check(boolean ok, String what)
+    {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
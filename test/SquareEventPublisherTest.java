@@ -0,0 +1,102 @@
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that a subscriber too slow to keep up is dropped, rather than
+ * holding up the game, and is told so.
+ * <p>
+ * Like the other tests, this is a plain program that stops with an
+ * AssertionError at the first failure:
+ * <pre>
+ * javac -d out *.java
+ * javac -cp out -d out test/SquareEventPublisherTest.java
+ * java -cp out SquareEventPublisherTest</pre>
+ */
+public class SquareEventPublisherTest
+{
+    /** How long the slow subscriber takes over each move */
+    private static final long SLOW_MILLIS = 1;
+
+    /** Enough moves that waiting for the slow subscriber would take ten seconds */
+    private static final int MOVES = 10000;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        slowSubscriberIsDropped();
+        System.out.println("SquareEventPublisherTest: all passed");
+    }
+
+    /**
+     * A subscriber that takes a millisecond a move gets the moves in its
+     * buffer, then onError, and the game thread never waits for it.
+     */
+    private static void slowSubscriberIsDropped() throws InterruptedException
+    {
+        PokerSquare square = new PokerSquare();
+        Slow slow = new Slow();
+        square.subscribe(slow);
+        Card card = Card.fromId(0);
+
+        long start = System.nanoTime();
+        for (int move = 0; move < MOVES; move++)
+            square.setCard(0, 0, move % 2 == 0 ? card : Card.BLANK);
+        long millis = (System.nanoTime() - start) / 1000000;
+        square.closeEvents();
+
+        // waiting even a quarter of the time the subscriber needs would mean it was waited for
+        check(millis < MOVES * SLOW_MILLIS / 4, MOVES + " moves took " + millis + " ms to publish");
+        check(slow.failed.await(30, TimeUnit.SECONDS), "no onError");
+        check(slow.error instanceof IllegalStateException, "onError with " + slow.error);
+        check(slow.received >= SquareEventPublisher.BUFFER, "only " + slow.received + " moves before onError");
+        check(slow.received < MOVES, "got every move, so nothing was dropped");
+        check(!slow.completed, "onComplete after onError");
+        System.out.println(MOVES + " moves published in " + millis + " ms; the slow subscriber got "
+                           + slow.received + " and was dropped");
+    }
+
+    /** Takes SLOW_MILLIS over each move, and notes what it is told */
+    private static final class Slow implements Flow.Subscriber<List<SquareEvent>>
+    {
+        final CountDownLatch failed = new CountDownLatch(1);
+        volatile int received;
+        volatile Throwable error;
+        volatile boolean completed;
+
+        public void onSubscribe(Flow.Subscription subscription)
+        {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        public void onNext(List<SquareEvent> move)
+        {
+            try
+            {
+                Thread.sleep(SLOW_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+            received++;
+        }
+
+        public void onError(Throwable error)
+        {
+            this.error = error;
+            failed.countDown();
+        }
+
+        public void onComplete()
+        {
+            completed = true;
+        }
+    }
+
+    private static void check(boolean ok, String what)
+    {
+        if (!ok)
+            throw new AssertionError(what);
+    }
+}
@@ -0,0 +1,63 @@
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The Vector API kernel for BatchEvaluator.  It follows the scalar loop step by
+ * step, but on as many hands at once as the machine's widest int vector holds,
+ * using lane compares and blends where the scalar loop uses sign-bit tricks.
+ * The hands left over after the last full vector go through the scalar loop.
+ * <p>
+ * The Vector API is still an incubator module, so this class lives in its own
+ * source directory, where <code>javac *.java</code> at the top doesn't see it,
+ * and is only loaded by reflection.  It is built on request, after the rest,
+ * and needs the module both to compile and to run:
+ * <pre>
+ * javac -d out *.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/VectorBatchEvaluator.java
+ * java --add-modules jdk.incubator.vector -cp out ...</pre>
+ * It is still in the unnamed package, next to BatchEvaluator at run time.
+ */
+final class VectorBatchEvaluator implements BatchEvaluator.Kernel
+{
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    public void classify(int[][] values, int[][] suits, int from, int to, int[] categories)
+    {
+        int[] v0 = values[0], v1 = values[1], v2 = values[2], v3 = values[3], v4 = values[4];
+        int[] s0 = suits[0], s1 = suits[1], s2 = suits[2], s3 = suits[3], s4 = suits[4];
+        IntVector zero = IntVector.zero(SPECIES), one = IntVector.broadcast(SPECIES, 1);
+
+        int i = from;
+        for (int end = from + SPECIES.loopBound(to - from); i < end; i += SPECIES.length())
+        {
+            IntVector a = IntVector.fromArray(SPECIES, v0, i), b = IntVector.fromArray(SPECIES, v1, i),
+                c = IntVector.fromArray(SPECIES, v2, i), d = IntVector.fromArray(SPECIES, v3, i),
+                e = IntVector.fromArray(SPECIES, v4, i);
+
+            VectorMask<Integer> ra = a.compare(VectorOperators.NE, 0), rb = b.compare(VectorOperators.NE, 0),
+                rc = c.compare(VectorOperators.NE, 0), rd = d.compare(VectorOperators.NE, 0);
+            IntVector matches = zero.add(1, a.eq(b).and(ra)).add(1, a.eq(c).and(ra)).add(1, a.eq(d).and(ra))
+                                    .add(1, a.eq(e).and(ra)).add(1, b.eq(c).and(rb)).add(1, b.eq(d).and(rb))
+                                    .add(1, b.eq(e).and(rb)).add(1, c.eq(d).and(rc)).add(1, c.eq(e).and(rc))
+                                    .add(1, d.eq(e).and(rd));
+            IntVector category = matches.add(2, matches.compare(VectorOperators.GE, 4))
+                                        .sub(1, matches.eq(6))
+                                        .blend(0, matches.eq(10));
+
+            IntVector bits = one.lanewise(VectorOperators.LSHL, a).or(one.lanewise(VectorOperators.LSHL, b))
+                             .or(one.lanewise(VectorOperators.LSHL, c)).or(one.lanewise(VectorOperators.LSHL, d))
+                             .or(one.lanewise(VectorOperators.LSHL, e));
+            VectorMask<Integer> straight = bits.eq(bits.and(bits.neg()).mul(31));
+            VectorMask<Integer> flush = IntVector.fromArray(SPECIES, s0, i).and(IntVector.fromArray(SPECIES, s1, i))
+                                        .and(IntVector.fromArray(SPECIES, s2, i)).and(IntVector.fromArray(SPECIES, s3, i))
+                                        .and(IntVector.fromArray(SPECIES, s4, i)).compare(VectorOperators.NE, 0);
+
+            category = category.max(zero.blend(4, straight)).max(zero.blend(5, flush))
+                               .blend(8, straight.and(flush));
+            category.intoArray(categories, i);
+        }
+        BatchEvaluator.classifyScalar(values, suits, i, to, categories);
+    }
+}